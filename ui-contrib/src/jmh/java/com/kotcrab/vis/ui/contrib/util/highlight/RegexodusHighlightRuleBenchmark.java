@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.Array;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link RegexodusHighlightRule} processing of synthetic documents. Run with `gradle jmh`, allocation rate
+ * is reported by JMH gc profiler.
+ * @author Kotcrab
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexodusHighlightRuleBenchmark {
+	@Param({"1024", "1048576", "10485760"})
+	public int size;
+
+	@Param({"dense", "sparse"})
+	public String density;
+
+	@Param({"1", "16"})
+	public int rules;
+
+	private String text;
+	private String editedText;
+	private Array<Highlight> highlights = new Array<Highlight>();
+
+	private Array<RegexodusHighlightRule> separateRules = new Array<RegexodusHighlightRule>();
+	private Array<RegexodusHighlightRule> incrementalRules = new Array<RegexodusHighlightRule>();
+	private Array<RegexodusHighlightRule> pooledRules = new Array<RegexodusHighlightRule>();
+	private CombinedRegexodusHighlightRule combinedRule = new CombinedRegexodusHighlightRule();
+
+	private boolean edited;
+
+	@Setup
+	public void setup () {
+		Random random = new Random(42);
+		int keywordChance = density.equals("dense") ? 2 : 100;
+
+		StringBuilder builder = new StringBuilder(size);
+		while (builder.length() < size) {
+			for (int word = 0; word < 10; word++) {
+				if (random.nextInt(keywordChance) == 0)
+					builder.append("keyword").append(random.nextInt(rules));
+				else
+					builder.append("lorem");
+				builder.append(' ');
+			}
+			builder.append('\n');
+		}
+		builder.setLength(size);
+		text = builder.toString();
+
+		builder.setCharAt(size / 2, builder.charAt(size / 2) == 'x' ? 'y' : 'x');
+		editedText = builder.toString();
+
+		for (int i = 0; i < rules; i++) {
+			String regex = "\\bkeyword" + i + "\\b";
+			separateRules.add(new RegexodusHighlightRule(Color.RED, regex));
+
+			RegexodusHighlightRule incrementalRule = new RegexodusHighlightRule(Color.RED, regex);
+			incrementalRule.setIncremental(true);
+			incrementalRules.add(incrementalRule);
+
+			RegexodusHighlightRule pooledRule = new RegexodusHighlightRule(Color.RED, regex);
+			pooledRule.setPooled(true);
+			pooledRules.add(pooledRule);
+
+			combinedRule.addRule(Color.RED, regex);
+		}
+	}
+
+	@Benchmark
+	public int separateRules () {
+		return process(separateRules, text);
+	}
+
+	@Benchmark
+	public int pooledRules () {
+		return process(pooledRules, text);
+	}
+
+	@Benchmark
+	public int combinedRule () {
+		highlights.clear();
+		combinedRule.process(text, highlights);
+		return highlights.size;
+	}
+
+	@Benchmark
+	public int incrementalEdit () {
+		edited = !edited;
+		return process(incrementalRules, edited ? editedText : text);
+	}
+
+	private int process (Array<RegexodusHighlightRule> rules, String text) {
+		highlights.clear();
+		for (int i = 0; i < rules.size; i++) {
+			rules.get(i).process(text, highlights);
+		}
+		return highlights.size;
+	}
+}
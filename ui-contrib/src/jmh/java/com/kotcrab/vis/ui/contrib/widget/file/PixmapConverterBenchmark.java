@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link PixmapConverter} with per pixel conversion previously used by
+ * {@link ImgScalrFileChooserIconProvider#imageToPixmap(BufferedImage)}. Run with `gradle jmh -Pjmh.includes=PixmapConverter`.
+ * @author Kotcrab
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixmapConverterBenchmark {
+	@Param({"64", "128", "256"})
+	public int size;
+
+	@Param({"true", "false"})
+	public boolean alpha;
+
+	private BufferedImage image;
+	private Color tmpColor = new Color();
+
+	@Setup
+	public void setup () {
+		GdxNativesLoader.load();
+		image = new BufferedImage(size, size, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		Random random = new Random(42);
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt();
+		}
+	}
+
+	@Benchmark
+	public int bulk () {
+		Pixmap pixmap = PixmapConverter.fromIntImage(image);
+		int pixel = pixmap.getPixel(0, 0);
+		pixmap.dispose();
+		return pixel;
+	}
+
+	@Benchmark
+	public int perPixel () {
+		Pixmap pixmap = perPixelToPixmap(image);
+		int pixel = pixmap.getPixel(0, 0);
+		pixmap.dispose();
+		return pixel;
+	}
+
+	private Pixmap perPixelToPixmap (BufferedImage image) {
+		final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		final boolean hasAlphaChannel = image.getAlphaRaster() != null;
+
+		Pixmap pixmap = new Pixmap(width, height, hasAlphaChannel ? Pixmap.Format.RGBA8888 : Pixmap.Format.RGB888);
+
+		for (int pixel = 0, row = 0, col = 0; pixel < pixels.length; pixel++) {
+			if (hasAlphaChannel) {
+				Color.argb8888ToColor(tmpColor, pixels[pixel]);
+			} else {
+				int color = pixels[pixel];
+				tmpColor.r = ((color & 0x00ff0000) >>> 16) / 255f;
+				tmpColor.g = ((color & 0x0000ff00) >>> 8) / 255f;
+				tmpColor.b = ((color & 0x000000ff)) / 255f;
+				tmpColor.a = 1f;
+			}
+			pixmap.drawPixel(col, row, Color.rgba8888(tmpColor));
+
+			col++;
+			if (col == width) {
+				col = 0;
+				row++;
+			}
+		}
+
+		return pixmap;
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+import com.kotcrab.vis.ui.util.highlight.HighlightRule;
+import com.kotcrab.vis.ui.widget.HighlightTextArea;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Highlighter rule running {@link RegexodusHighlightRule} on background thread. When text changes, snapshot of the text
+ * is processed on executor and finished highlights are passed to render thread using {@link com.badlogic.gdx.Application#postRunnable(Runnable)},
+ * after that text area highlighter is processed again. Jobs made stale by newer edits are dropped. Until new highlights
+ * are ready, highlights from previous result that are placed before first changed character are used.
+ * <p>
+ * Wrapped rule must not use pooled mode. Rule must not be shared between multiple text areas. Can't be used on GWT.
+ * @author Kotcrab
+ */
+public class AsyncRegexodusHighlightRule implements HighlightRule, Disposable {
+	private final RegexodusHighlightRule rule;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private String submittedText;
+	private String resultText;
+	private Array<Highlight> result = new Array<Highlight>();
+
+	/** Creates rule using own single thread executor which is shut down when this rule is disposed. */
+	public AsyncRegexodusHighlightRule (RegexodusHighlightRule rule) {
+		this(rule, Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread (Runnable runnable) {
+				Thread thread = new Thread(runnable, "AsyncRegexodusHighlightRule");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true);
+	}
+
+	/** Creates rule using provided executor, it won't be shut down when this rule is disposed. */
+	public AsyncRegexodusHighlightRule (RegexodusHighlightRule rule, ExecutorService executor) {
+		this(rule, executor, false);
+	}
+
+	private AsyncRegexodusHighlightRule (RegexodusHighlightRule rule, ExecutorService executor, boolean ownsExecutor) {
+		if (rule.isPooled()) throw new IllegalArgumentException("Wrapped rule can't use pooled mode");
+		this.rule = rule;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	@Override
+	public void process (final HighlightTextArea textArea, Array<Highlight> highlights) {
+		final String text = textArea.getText();
+
+		if (text == resultText) {
+			highlights.addAll(result);
+			return;
+		}
+
+		if (resultText != null) {
+			int minLength = Math.min(text.length(), resultText.length());
+			int prefix = 0;
+			while (prefix < minLength && text.charAt(prefix) == resultText.charAt(prefix)) prefix++;
+			for (int i = 0; i < result.size; i++) {
+				Highlight highlight = result.get(i);
+				if (highlight.getEnd() <= prefix) highlights.add(highlight);
+			}
+		}
+
+		if (text == submittedText) return;
+		submittedText = text;
+		final int jobGeneration = generation.incrementAndGet();
+
+		executor.execute(new Runnable() {
+			@Override
+			public void run () {
+				if (generation.get() != jobGeneration) return;
+
+				final Array<Highlight> jobResult = new Array<Highlight>();
+				synchronized (rule) {
+					rule.process(text, jobResult);
+				}
+
+				if (generation.get() != jobGeneration) return;
+				Gdx.app.postRunnable(new Runnable() {
+					@Override
+					public void run () {
+						if (generation.get() != jobGeneration) return;
+						resultText = text;
+						result = jobResult;
+						textArea.processHighlighter();
+					}
+				});
+			}
+		});
+	}
+
+	public RegexodusHighlightRule getRule () {
+		return rule;
+	}
+
+	@Override
+	public void dispose () {
+		generation.incrementAndGet();
+		if (ownsExecutor) executor.shutdownNow();
+	}
+}
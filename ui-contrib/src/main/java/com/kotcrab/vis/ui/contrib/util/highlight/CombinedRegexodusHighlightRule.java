@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+import regexodus.Matcher;
+import regexodus.Pattern;
+
+/**
+ * Highlighter rule combining multiple color and regex pairs into single RegExodus pattern, text is scanned only once
+ * for all added rules instead of once per rule. Each regex is wrapped in capturing group and alternation of those groups
+ * is used, group that captured the match decides which color is used.
+ * <p>
+ * Unlike separate {@link RegexodusHighlightRule}s produced highlights never overlap, if multiple regexes match at
+ * the same position the one added first wins. Numbered back references can't be used in added regexes because group
+ * numbers are shifted, use named groups instead. Incremental and pooled modes are supported, see {@link RegexodusHighlightRule}.
+ * @author Kotcrab
+ */
+public class CombinedRegexodusHighlightRule extends RegexodusHighlightRule {
+	private Array<Color> colors = new Array<Color>();
+	private Array<String> regexes = new Array<String>();
+	private IntArray groups = new IntArray();
+	private int nextGroup = 1;
+
+	private boolean dirty;
+
+	public CombinedRegexodusHighlightRule () {
+	}
+
+	/**
+	 * Adds new regex to this rule. Combined pattern is compiled when rule is processed for the first time after
+	 * adding regex.
+	 * @param color color used for matches of this regex
+	 * @param regex RegExodus regex
+	 */
+	public void addRule (Color color, String regex) {
+		Pattern pattern = RegexodusPatternCache.compile(regex);
+		colors.add(color);
+		regexes.add(regex);
+		groups.add(nextGroup);
+		nextGroup += pattern.groupCount();
+		dirty = true;
+	}
+
+	@Override
+	public void process (String text, Array<Highlight> highlights) {
+		if (regexes.size == 0) return;
+		compileIfDirty();
+		super.process(text, highlights);
+	}
+
+	@Override
+	public void process (String text, int start, int end, Array<Highlight> highlights) {
+		if (regexes.size == 0) return;
+		compileIfDirty();
+		super.process(text, start, end, highlights);
+	}
+
+	private void compileIfDirty () {
+		if (dirty == false) return;
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < regexes.size; i++) {
+			if (i != 0) builder.append('|');
+			builder.append('(').append(regexes.get(i)).append(')');
+		}
+		setPattern(RegexodusPatternCache.compile(builder.toString()));
+		dirty = false;
+	}
+
+	@Override
+	protected Color getMatchColor (Matcher matcher) {
+		for (int i = 0; i < groups.size; i++) {
+			if (matcher.isCaptured(groups.get(i))) return colors.get(i);
+		}
+		return colors.peek();
+	}
+}
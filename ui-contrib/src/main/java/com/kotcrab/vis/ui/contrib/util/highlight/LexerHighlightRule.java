@@ -0,0 +1,340 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.Pool;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+import com.kotcrab.vis.ui.util.highlight.HighlightRule;
+import com.kotcrab.vis.ui.widget.HighlightTextArea;
+import regexodus.Matcher;
+import regexodus.Pattern;
+
+/**
+ * Highlighter rule working as line based state machine, supports constructs spanning multiple lines such as block
+ * comments and multi-line strings. Tokens (see {@link #addToken(Color, String)}) are single line matches, spans (see
+ * {@link #addSpan(Color, String, String)}) start with begin regex and continue, possibly through multiple lines, until
+ * end regex is matched. Tokens are not matched inside spans. When multiple regexes match at the same position the one
+ * added first wins.
+ * <p>
+ * Lexer state at the start of every line is stored. After edit lexing is resumed from the first changed line and stops
+ * once state at the start of line matches state stored in previous pass, highlights of remaining lines are shifted.
+ * Rule should not be shared between multiple text areas, highlights emitted by this rule must not be retained after
+ * text area processed highlighter again. Numbered back references can't be used in begin and token regexes.
+ * @author Kotcrab
+ */
+public class LexerHighlightRule implements HighlightRule {
+	private static final int DEFAULT_STATE = 0;
+
+	private Array<Color> colors = new Array<Color>();
+	private Array<String> regexes = new Array<String>();
+	private Array<Pattern> endPatterns = new Array<Pattern>();
+	private IntArray groups = new IntArray();
+	private int nextGroup = 1;
+	private boolean dirty;
+
+	private Matcher matcher;
+	private Array<Matcher> endMatchers = new Array<Matcher>();
+
+	private HighlightTextArea lastTextArea;
+	private String lastText;
+	private IntArray lineStarts = new IntArray();
+	private IntArray lineStates = new IntArray();
+	private Array<Array<Highlight>> lineHighlights = new Array<Array<Highlight>>();
+
+	private IntArray tmpLineStarts = new IntArray();
+	private IntArray tmpLineStates = new IntArray();
+	private Array<Array<Highlight>> tmpLineHighlights = new Array<Array<Highlight>>();
+	private char[] buffer = new char[0];
+
+	private final Pool<PooledHighlight> highlightPool = new Pool<PooledHighlight>() {
+		@Override
+		protected PooledHighlight newObject () {
+			return new PooledHighlight();
+		}
+	};
+
+	private final Pool<Array<Highlight>> arrayPool = new Pool<Array<Highlight>>() {
+		@Override
+		protected Array<Highlight> newObject () {
+			return new Array<Highlight>();
+		}
+	};
+
+	/**
+	 * Adds single line token.
+	 * @param color color used for matches of this regex
+	 * @param regex RegExodus regex
+	 */
+	public void addToken (Color color, String regex) {
+		add(color, regex, null);
+	}
+
+	/**
+	 * Adds span which may continue through multiple lines, for example block comment.
+	 * @param color color used for whole span including begin and end matches
+	 * @param beginRegex RegExodus regex starting span
+	 * @param endRegex RegExodus regex ending span, searched after begin match
+	 */
+	public void addSpan (Color color, String beginRegex, String endRegex) {
+		add(color, beginRegex, RegexodusPatternCache.compile(endRegex));
+	}
+
+	private void add (Color color, String regex, Pattern endPattern) {
+		Pattern pattern = RegexodusPatternCache.compile(regex);
+		colors.add(color);
+		regexes.add(regex);
+		endPatterns.add(endPattern);
+		groups.add(nextGroup);
+		nextGroup += pattern.groupCount();
+		dirty = true;
+	}
+
+	@Override
+	public void process (HighlightTextArea textArea, Array<Highlight> highlights) {
+		if (regexes.size == 0) return;
+		if (dirty) {
+			compile();
+			lastText = null;
+		}
+
+		String text = textArea.getText();
+		if (textArea != lastTextArea || lastText == null) {
+			lexAll(text);
+		} else if (text != lastText) {
+			update(text);
+		}
+
+		lastTextArea = textArea;
+		lastText = text;
+		for (int i = 0; i < lineHighlights.size; i++) {
+			highlights.addAll(lineHighlights.get(i));
+		}
+	}
+
+	private void compile () {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < regexes.size; i++) {
+			if (i != 0) builder.append('|');
+			builder.append('(').append(regexes.get(i)).append(')');
+		}
+		matcher = RegexodusPatternCache.compile(builder.toString()).matcher();
+
+		endMatchers.clear();
+		for (int i = 0; i < endPatterns.size; i++) {
+			Pattern endPattern = endPatterns.get(i);
+			endMatchers.add(endPattern == null ? null : endPattern.matcher());
+		}
+		dirty = false;
+	}
+
+	private void lexAll (String text) {
+		for (int i = 0; i < lineHighlights.size; i++) {
+			freeLine(lineHighlights.get(i));
+		}
+		lineStarts.clear();
+		lineStates.clear();
+		lineHighlights.clear();
+
+		int state = DEFAULT_STATE;
+		int start = 0;
+		while (true) {
+			int end = lineEnd(text, start);
+			Array<Highlight> line = arrayPool.obtain();
+			lineStarts.add(start);
+			lineStates.add(state);
+			lineHighlights.add(line);
+			state = lexLine(text, start, end, state, line);
+			if (end == text.length()) break;
+			start = end + 1;
+		}
+	}
+
+	private void update (String text) {
+		int oldLength = lastText.length();
+		int newLength = text.length();
+
+		int minLength = Math.min(oldLength, newLength);
+		int prefix = 0;
+		while (prefix < minLength && text.charAt(prefix) == lastText.charAt(prefix)) prefix++;
+		if (prefix == oldLength && oldLength == newLength) return;
+
+		int suffix = 0;
+		int maxSuffix = minLength - prefix;
+		while (suffix < maxSuffix && text.charAt(newLength - 1 - suffix) == lastText.charAt(oldLength - 1 - suffix)) suffix++;
+
+		int delta = newLength - oldLength;
+		int firstLine = findLine(prefix);
+		int oldLastLine = findLine(oldLength - suffix);
+		int regionEnd = lineEnd(lastText, lineStarts.get(oldLastLine)) + delta;
+
+		tmpLineStarts.clear();
+		tmpLineStates.clear();
+		tmpLineHighlights.clear();
+		tmpLineStarts.addAll(lineStarts, 0, firstLine);
+		tmpLineStates.addAll(lineStates, 0, firstLine);
+		tmpLineHighlights.addAll(lineHighlights, 0, firstLine);
+
+		// lex lines affected by the edit
+		int state = lineStates.get(firstLine);
+		int start = lineStarts.get(firstLine);
+		while (true) {
+			int end = lineEnd(text, start);
+			Array<Highlight> line = arrayPool.obtain();
+			tmpLineStarts.add(start);
+			tmpLineStates.add(state);
+			tmpLineHighlights.add(line);
+			state = lexLine(text, start, end, state, line);
+			if (end >= regionEnd) break;
+			start = end + 1;
+		}
+
+		for (int i = firstLine; i <= oldLastLine; i++) {
+			freeLine(lineHighlights.get(i));
+		}
+
+		// lines after the edit, lexed again until state converges, shifted otherwise
+		boolean converged = false;
+		for (int i = oldLastLine + 1; i < lineStarts.size; i++) {
+			Array<Highlight> line = lineHighlights.get(i);
+			int lineStart = lineStarts.get(i) + delta;
+			tmpLineStarts.add(lineStart);
+
+			if (converged == false && lineStates.get(i) == state) converged = true;
+			if (converged) {
+				tmpLineStates.add(lineStates.get(i));
+				for (int j = 0; j < line.size; j++) {
+					((PooledHighlight) line.get(j)).shift(delta);
+				}
+			} else {
+				tmpLineStates.add(state);
+				freeHighlights(line);
+				state = lexLine(text, lineStart, lineEnd(text, lineStart), state, line);
+			}
+			tmpLineHighlights.add(line);
+		}
+
+		IntArray swapStarts = lineStarts;
+		lineStarts = tmpLineStarts;
+		tmpLineStarts = swapStarts;
+		IntArray swapStates = lineStates;
+		lineStates = tmpLineStates;
+		tmpLineStates = swapStates;
+		Array<Array<Highlight>> swapHighlights = lineHighlights;
+		lineHighlights = tmpLineHighlights;
+		tmpLineHighlights = swapHighlights;
+		tmpLineHighlights.clear();
+	}
+
+	/** @return state at the end of line */
+	private int lexLine (String text, int start, int end, int state, Array<Highlight> target) {
+		int length = end - start;
+		if (buffer.length < length) buffer = new char[length];
+		text.getChars(start, end, buffer, 0);
+
+		int position = 0;
+		if (state != DEFAULT_STATE) {
+			int rule = state - 1;
+			int spanEnd = findSpanEnd(rule, 0, length);
+			if (spanEnd == -1) {
+				addHighlight(target, colors.get(rule), start, end);
+				return state;
+			}
+			addHighlight(target, colors.get(rule), start, start + spanEnd);
+			position = spanEnd;
+		}
+
+		while (position < length) {
+			matcher.setTarget(buffer, position, length - position);
+			int rule = -1;
+			int matchStart = 0;
+			int matchEnd = 0;
+			while (matcher.find()) {
+				if (matcher.start() == matcher.end()) continue;
+				rule = getMatchedRule();
+				matchStart = position + matcher.start();
+				matchEnd = position + matcher.end();
+				if (endMatchers.get(rule) != null) break;
+				addHighlight(target, colors.get(rule), start + matchStart, start + matchEnd);
+				rule = -1;
+			}
+			if (rule == -1) break;
+
+			int spanEnd = findSpanEnd(rule, matchEnd, length);
+			if (spanEnd == -1) {
+				addHighlight(target, colors.get(rule), start + matchStart, end);
+				return rule + 1;
+			}
+			addHighlight(target, colors.get(rule), start + matchStart, start + spanEnd);
+			position = spanEnd;
+		}
+
+		return DEFAULT_STATE;
+	}
+
+	private int findSpanEnd (int rule, int from, int length) {
+		Matcher endMatcher = endMatchers.get(rule);
+		endMatcher.setTarget(buffer, from, length - from);
+		if (endMatcher.find()) return from + endMatcher.end();
+		return -1;
+	}
+
+	private int getMatchedRule () {
+		for (int i = 0; i < groups.size; i++) {
+			if (matcher.isCaptured(groups.get(i))) return i;
+		}
+		return groups.size - 1;
+	}
+
+	private void addHighlight (Array<Highlight> target, Color color, int start, int end) {
+		if (start >= end) return;
+		target.add(highlightPool.obtain().set(color, start, end));
+	}
+
+	private void freeHighlights (Array<Highlight> line) {
+		for (int i = 0; i < line.size; i++) {
+			highlightPool.free((PooledHighlight) line.get(i));
+		}
+		line.clear();
+	}
+
+	private void freeLine (Array<Highlight> line) {
+		freeHighlights(line);
+		arrayPool.free(line);
+	}
+
+	/** @return index of last line starting at or before given position */
+	private int findLine (int position) {
+		int low = 0;
+		int high = lineStarts.size - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (lineStarts.get(mid) <= position)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	private static int lineEnd (String text, int index) {
+		int end = text.indexOf('\n', index);
+		return end == -1 ? text.length() : end;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.Pool;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+
+/**
+ * Mutable {@link Highlight} that can be stored in libGDX {@link Pool}. Values passed to super constructor are only
+ * placeholders, actual values are set using {@link #set(Color, int, int)}.
+ * @author Kotcrab
+ */
+public class PooledHighlight extends Highlight implements Pool.Poolable {
+	private Color color;
+	private int start;
+	private int end;
+
+	public PooledHighlight () {
+		super(Color.CLEAR, 0, 1);
+	}
+
+	public PooledHighlight set (Color color, int start, int end) {
+		this.color = color;
+		this.start = start;
+		this.end = end;
+		return this;
+	}
+
+	public void shift (int delta) {
+		start += delta;
+		end += delta;
+	}
+
+	@Override
+	public Color getColor () {
+		return color;
+	}
+
+	@Override
+	public int getStart () {
+		return start;
+	}
+
+	@Override
+	public int getEnd () {
+		return end;
+	}
+
+	@Override
+	public void reset () {
+		color = null;
+		start = 0;
+		end = 0;
+	}
+}
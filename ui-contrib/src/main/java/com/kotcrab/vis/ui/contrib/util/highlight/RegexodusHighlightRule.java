@@ -18,31 +18,370 @@ package com.kotcrab.vis.ui.contrib.util.highlight;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.kotcrab.vis.ui.util.highlight.Highlight;
 import com.kotcrab.vis.ui.util.highlight.HighlightRule;
 import com.kotcrab.vis.ui.widget.HighlightTextArea;
 import regexodus.Matcher;
 import regexodus.Pattern;
+import regexodus.REFlags;
 
 /**
  * Highlighter rule using RegExodus library to detect text matches. Can be used on GWT.
+ * <p>
+ * Rule can work in incremental mode (see {@link #setIncremental(boolean)}). In this mode highlights from previous pass
+ * are kept and only lines touched by the edit are scanned again, highlights after edited region are shifted. Incremental
+ * mode assumes that pattern matches don't span multiple lines, matches crossing edited lines that were not present in
+ * previous pass won't be detected. Rescanned lines are matched together with one line before and after them, so anchors
+ * such as {@code ^}, {@code $} and {@code \z}, lookbehind and lookahead give the same results as full scan as long as
+ * they don't look further than neighbouring line.
+ * <p>
+ * Rule can also use pooled highlights (see {@link #setPooled(boolean)}). In this mode highlights emitted in previous
+ * pass are recycled, so processing doesn't create garbage once pool and buffers have grown to document size.
+ * <p>
+ * Optional time budget can be set to limit how long single pass can take (see {@link #setTimeBudget(long)}).
  * @author Kotcrab
  * @since 1.1.2
  */
 public class RegexodusHighlightRule implements HighlightRule {
 	private Color color;
 	private Pattern pattern;
+	private Matcher matcher;
+
+	private boolean incremental;
+	private boolean pooled;
+
+	private long timeBudget;
+	private BudgetListener budgetListener;
+	private long passStart;
+	private boolean overrun;
+
+	private HighlightTextArea lastTextArea;
+	private String lastText;
+	private Array<Highlight> cachedHighlights = new Array<Highlight>();
+	private Array<Highlight> tmpHighlights = new Array<Highlight>();
+	private char[] buffer = new char[0];
+
+	private final Pool<PooledHighlight> highlightPool = new Pool<PooledHighlight>() {
+		@Override
+		protected PooledHighlight newObject () {
+			return new PooledHighlight();
+		}
+	};
 
 	public RegexodusHighlightRule (Color color, String regex) {
+		this(color, regex, REFlags.DEFAULT);
+	}
+
+	/**
+	 * @param regex RegExodus regex, compiled pattern is obtained from {@link RegexodusPatternCache}
+	 * @param flags {@link REFlags} flags
+	 */
+	public RegexodusHighlightRule (Color color, String regex, int flags) {
 		this.color = color;
-		pattern = Pattern.compile(regex);
+		setPattern(RegexodusPatternCache.compile(regex, flags));
+	}
+
+	/** Constructor for subclasses, {@link #setPattern(Pattern)} must be called before rule is processed. */
+	protected RegexodusHighlightRule () {
 	}
 
 	@Override
 	public void process (HighlightTextArea textArea, Array<Highlight> highlights) {
-		Matcher matcher = pattern.matcher(textArea.getText());
+		if (textArea != lastTextArea) lastText = null;
+		lastTextArea = textArea;
+		process(textArea.getText(), highlights);
+	}
+
+	/**
+	 * Processes text directly, without text area. Can be called from any thread as long as rule is not processed
+	 * concurrently.
+	 * @param text text to highlight
+	 * @param highlights array to which highlights will be added
+	 */
+	public void process (String text, Array<Highlight> highlights) {
+		startPass();
+		if (incremental == false && pooled == false) {
+			if (timeBudget == 0) {
+				Matcher matcher = pattern.matcher(text);
+				while (matcher.find()) {
+					highlights.add(new Highlight(getMatchColor(matcher), matcher.start(), matcher.end()));
+				}
+			} else {
+				scan(text, 0, text.length(), highlights, false);
+			}
+			finishPass();
+			return;
+		}
+
+		if (incremental && lastText != null) {
+			if (text != lastText) update(text);
+		} else {
+			freeAll(cachedHighlights);
+			scan(text, 0, text.length(), cachedHighlights, pooled);
+		}
+
+		lastText = overrun ? null : text; // partial results can't be updated incrementally
+		highlights.addAll(cachedHighlights);
+		finishPass();
+	}
+
+	private void update (String text) {
+		int oldLength = lastText.length();
+		int newLength = text.length();
+
+		int minLength = Math.min(oldLength, newLength);
+		int prefix = 0;
+		while (prefix < minLength && text.charAt(prefix) == lastText.charAt(prefix)) prefix++;
+		if (prefix == oldLength && oldLength == newLength) return;
+
+		int suffix = 0;
+		int maxSuffix = minLength - prefix;
+		while (suffix < maxSuffix && text.charAt(newLength - 1 - suffix) == lastText.charAt(oldLength - 1 - suffix)) suffix++;
+
+		int delta = newLength - oldLength;
+		// previous line is scanned too, its matches may depend on line terminator that follows it, e.g. '$' before final terminator
+		int start = lineStart(text, prefix);
+		if (start > 0) start = lineStart(text, start - 1);
+		int end = lineEnd(text, newLength - suffix);
+
+		// widen region so no highlight from previous pass is partially inside it
+		boolean widened = true;
+		while (widened) {
+			widened = false;
+			for (int i = 0; i < cachedHighlights.size; i++) {
+				Highlight highlight = cachedHighlights.get(i);
+				if (highlight.getStart() < start && highlight.getEnd() > start) {
+					start = lineStart(text, highlight.getStart());
+					widened = true;
+				}
+				if (highlight.getStart() < end - delta && highlight.getEnd() > end - delta) {
+					end = lineEnd(text, highlight.getEnd() + delta);
+					widened = true;
+				}
+			}
+		}
+
+		int oldEnd = end - delta;
+		tmpHighlights.clear();
+		for (int i = 0; i < cachedHighlights.size; i++) {
+			Highlight highlight = cachedHighlights.get(i);
+			if (highlight.getEnd() <= start) tmpHighlights.add(highlight);
+		}
+		scan(text, start, end, tmpHighlights, pooled);
+		for (int i = 0; i < cachedHighlights.size; i++) {
+			Highlight highlight = cachedHighlights.get(i);
+			if (highlight.getStart() < oldEnd) {
+				if (highlight.getEnd() > start) free(highlight);
+				continue;
+			}
+
+			if (delta == 0)
+				tmpHighlights.add(highlight);
+			else if (highlight instanceof PooledHighlight) {
+				((PooledHighlight) highlight).shift(delta);
+				tmpHighlights.add(highlight);
+			} else
+				tmpHighlights.add(new Highlight(highlight.getColor(), highlight.getStart() + delta, highlight.getEnd() + delta));
+		}
+
+		Array<Highlight> swap = cachedHighlights;
+		cachedHighlights = tmpHighlights;
+		tmpHighlights = swap;
+		tmpHighlights.clear();
+	}
+
+	/**
+	 * Processes only given region of text. Only matches starting inside region are found. Region is matched together
+	 * with one line before and after it, so anchors, lookbehind and lookahead behave the same as when whole text is
+	 * processed, while rest of text is neither searched nor copied. Highlights are not cached and are never pooled,
+	 * incremental and pooled modes don't affect this method.
+	 * @param text text to highlight
+	 * @param start region start index, inclusive
+	 * @param end region end index, exclusive
+	 * @param highlights array to which highlights will be added
+	 */
+	public void process (String text, int start, int end, Array<Highlight> highlights) {
+		startPass();
+		scan(text, start, end, highlights, false);
+		finishPass();
+	}
+
+	/**
+	 * When time budget is set region is searched line by line, so budget is also checked after searches that didn't
+	 * find anything and single search can't take longer than matching one line.
+	 */
+	private void scan (String text, int start, int end, Array<Highlight> target, boolean pool) {
+		if (timeBudget == 0) {
+			search(text, start, end, target, pool);
+			return;
+		}
+		int position = start;
+		while (position < end) {
+			int nextLine = Math.min(lineEnd(text, position) + 1, end);
+			position = Math.max(nextLine, search(text, position, nextLine, target, pool));
+			if (overrun || isOverBudget()) break;
+		}
+	}
+
+	/**
+	 * Matcher target is window of text extended by one line before and after region, so anchors, lookbehind and
+	 * lookahead see real neighbouring characters while single search can't run past the window. Only window is copied.
+	 * Matches that may be caused by artificial end of window are dropped.
+	 * @return end of last match or start if nothing was matched
+	 */
+	private int search (String text, int start, int end, Array<Highlight> target, boolean pool) {
+		int windowStart = lineStart(text, start);
+		if (windowStart > 0) windowStart = lineStart(text, windowStart - 1);
+		int windowEnd = lineEnd(text, end);
+		if (windowEnd < text.length()) windowEnd = lineEnd(text, windowEnd + 1);
+		// window ending with line terminator would let '$' match before it
+		while (windowEnd < text.length() && text.charAt(windowEnd - 1) == '\n') windowEnd = lineEnd(text, windowEnd + 1);
+
+		int length = windowEnd - windowStart;
+		if (buffer.length < length) buffer = new char[length];
+		text.getChars(windowStart, windowEnd, buffer, 0);
+
+		matcher.setTarget(buffer, 0, length);
+		matcher.setPosition(start - windowStart);
+		int lastEnd = start;
 		while (matcher.find()) {
-			highlights.add(new Highlight(color, matcher.start(), matcher.end()));
+			int matchStart = windowStart + matcher.start();
+			int matchEnd = windowStart + matcher.end();
+			if (matchStart >= end) break;
+			if (matchStart == matchEnd) continue;
+			if (matchEnd == windowEnd && windowEnd != text.length()) continue;
+			Color color = getMatchColor(matcher);
+			if (pool)
+				target.add(highlightPool.obtain().set(color, matchStart, matchEnd));
+			else
+				target.add(new Highlight(color, matchStart, matchEnd));
+			lastEnd = matchEnd;
+			if (isOverBudget()) break;
 		}
+		return lastEnd;
+	}
+
+	private void startPass () {
+		overrun = false;
+		if (timeBudget != 0) passStart = TimeUtils.nanoTime();
+	}
+
+	private boolean isOverBudget () {
+		if (timeBudget == 0 || TimeUtils.nanoTime() - passStart <= timeBudget) return false;
+		overrun = true;
+		return true;
+	}
+
+	private void finishPass () {
+		if (overrun && budgetListener != null) {
+			budgetListener.budgetExceeded(this, TimeUtils.nanosToMillis(TimeUtils.nanoTime() - passStart));
+		}
+	}
+
+	private void free (Highlight highlight) {
+		if (highlight instanceof PooledHighlight) highlightPool.free((PooledHighlight) highlight);
+	}
+
+	private void freeAll (Array<Highlight> highlights) {
+		for (int i = 0; i < highlights.size; i++) {
+			free(highlights.get(i));
+		}
+		highlights.clear();
+	}
+
+	/**
+	 * Called for every match found by this rule.
+	 * @param matcher matcher positioned at current match
+	 * @return color that should be used for current match
+	 */
+	protected Color getMatchColor (Matcher matcher) {
+		return color;
+	}
+
+	/** Changes pattern used by this rule. Highlights from previous pass won't be reused. */
+	protected void setPattern (Pattern pattern) {
+		this.pattern = pattern;
+		matcher = pattern.matcher();
+		invalidate();
+	}
+
+	private static int lineStart (String text, int index) {
+		return text.lastIndexOf('\n', index - 1) + 1;
+	}
+
+	private static int lineEnd (String text, int index) {
+		int end = text.indexOf('\n', index);
+		return end == -1 ? text.length() : end;
+	}
+
+	/**
+	 * Enables incremental mode. When enabled only lines affected by the last edit are scanned again, which makes
+	 * highlighting cost depend on edit size instead of document size. Rule should not be shared between multiple text
+	 * areas when using this mode, if it is every text area change will cause full rescan.
+	 * @param incremental whether incremental mode should be used
+	 */
+	public void setIncremental (boolean incremental) {
+		this.incremental = incremental;
+		invalidate();
+	}
+
+	public boolean isIncremental () {
+		return incremental;
+	}
+
+	/**
+	 * Enables pooled highlights. When enabled highlights emitted by this rule are {@link PooledHighlight}s which are
+	 * recycled on next pass, they must not be retained after text area processed highlighter again. Rule must not be
+	 * shared between multiple text areas when using this mode.
+	 * @param pooled whether highlights should be pooled
+	 */
+	public void setPooled (boolean pooled) {
+		this.pooled = pooled;
+		invalidate();
+	}
+
+	public boolean isPooled () {
+		return pooled;
+	}
+
+	/**
+	 * Sets time budget for single pass of this rule. When pass takes longer than budget, matching is stopped, highlights
+	 * found so far are used and {@link BudgetListener} is notified. When budget is set text is searched line by line
+	 * and budget is checked after every match and every line. RegExodus can't interrupt single search, so pattern with
+	 * catastrophic backtracking can still exceed budget by time needed to search one line, such pass is still reported.
+	 * Matches can't span more than neighbouring lines in this mode.
+	 * @param millis time budget in milliseconds, 0 disables budget
+	 */
+	public void setTimeBudget (long millis) {
+		this.timeBudget = TimeUtils.millisToNanos(millis);
+	}
+
+	public long getTimeBudget () {
+		return TimeUtils.nanosToMillis(timeBudget);
+	}
+
+	/** @param budgetListener listener notified when rule exceeds its time budget, may be null */
+	public void setBudgetListener (BudgetListener budgetListener) {
+		this.budgetListener = budgetListener;
+	}
+
+	public BudgetListener getBudgetListener () {
+		return budgetListener;
+	}
+
+	private void invalidate () {
+		lastTextArea = null;
+		lastText = null;
+		freeAll(cachedHighlights);
+	}
+
+	/**
+	 * Listener notified when rule exceeds its time budget. When rule is processed on different thread, for example by
+	 * {@link AsyncRegexodusHighlightRule}, listener is called on that thread.
+	 */
+	public interface BudgetListener {
+		void budgetExceeded (RegexodusHighlightRule rule, long elapsedMillis);
 	}
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import regexodus.Pattern;
+import regexodus.REFlags;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shared, thread safe cache of compiled RegExodus {@link Pattern}s used by highlight rules. Patterns are keyed by regex
+ * and flags, least recently used patterns are removed when cache is full. Compiled patterns are immutable and can be
+ * shared between rules and threads.
+ * @author Kotcrab
+ */
+public class RegexodusPatternCache {
+	private static final int DEFAULT_MAX_SIZE = 256;
+
+	private static int maxSize = DEFAULT_MAX_SIZE;
+	private static int hits;
+	private static int misses;
+
+	private static final LinkedHashMap<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<String, Pattern> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	private RegexodusPatternCache () {
+	}
+
+	public static Pattern compile (String regex) {
+		return compile(regex, REFlags.DEFAULT);
+	}
+
+	/**
+	 * Returns compiled pattern from cache, compiling and storing it if it wasn't cached yet.
+	 * @param regex RegExodus regex
+	 * @param flags {@link REFlags} flags
+	 */
+	public static Pattern compile (String regex, int flags) {
+		String key = flags + ":" + regex;
+		synchronized (patterns) {
+			Pattern pattern = patterns.get(key);
+			if (pattern != null) {
+				hits++;
+				return pattern;
+			}
+			misses++;
+		}
+
+		Pattern pattern = Pattern.compile(regex, flags);
+		synchronized (patterns) {
+			patterns.put(key, pattern);
+		}
+		return pattern;
+	}
+
+	/** Changes maximum amount of cached patterns, default is 256. Excess patterns are removed on next insertion. */
+	public static void setMaxSize (int maxSize) {
+		synchronized (patterns) {
+			RegexodusPatternCache.maxSize = maxSize;
+		}
+	}
+
+	public static int getMaxSize () {
+		synchronized (patterns) {
+			return maxSize;
+		}
+	}
+
+	public static int getSize () {
+		synchronized (patterns) {
+			return patterns.size();
+		}
+	}
+
+	/** @return amount of {@link #compile(String, int)} calls that returned cached pattern */
+	public static int getHits () {
+		synchronized (patterns) {
+			return hits;
+		}
+	}
+
+	/** @return amount of {@link #compile(String, int)} calls that had to compile pattern */
+	public static int getMisses () {
+		synchronized (patterns) {
+			return misses;
+		}
+	}
+
+	/** Removes all cached patterns and resets hit and miss counters. */
+	public static void clear () {
+		synchronized (patterns) {
+			patterns.clear();
+			hits = 0;
+			misses = 0;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.scenes.scene2d.Action;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.ui.ScrollPane;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+import com.kotcrab.vis.ui.util.highlight.HighlightRule;
+import com.kotcrab.vis.ui.widget.HighlightTextArea;
+
+/**
+ * Highlighter rule processing only lines visible in text area plus margin, using wrapped {@link RegexodusHighlightRule}.
+ * Text is divided into blocks of lines which are matched when they become visible, highlights of already matched blocks
+ * are kept until text changes. Visible lines are calculated from {@link ScrollPane} that text area was added to (see
+ * {@link HighlightTextArea#createCompatibleScrollPane()}), if there is no such pane whole text is processed.
+ * <p>
+ * Rule adds action to text area that checks scroll position every frame and processes highlighter again when
+ * not yet matched block becomes visible. Blocks are split on line boundaries, matches spanning multiple lines may
+ * not be detected. Every block is matched together with one line before and after it, so anchors such as {@code ^},
+ * {@code $} and {@code \z} don't match at block boundaries, while matching block costs the same regardless of document
+ * size. Wrapped rule must not use pooled mode. Rule must not be shared between multiple text areas.
+ * @author Kotcrab
+ */
+public class ViewportRegexodusHighlightRule implements HighlightRule {
+	private static final int BLOCK_LINES = 64;
+
+	private final RegexodusHighlightRule rule;
+	private int marginLines = 30;
+
+	private HighlightTextArea textArea;
+	private String lastText;
+	private IntArray lineStarts = new IntArray();
+	private Array<Array<Highlight>> blocks = new Array<Array<Highlight>>();
+
+	private final Action viewportAction = new Action() {
+		@Override
+		public boolean act (float delta) {
+			if (textArea != null && textArea.getText() == lastText && isViewportProcessed() == false) {
+				textArea.processHighlighter();
+			}
+			return false;
+		}
+	};
+
+	public ViewportRegexodusHighlightRule (RegexodusHighlightRule rule) {
+		if (rule.isPooled()) throw new IllegalArgumentException("Wrapped rule can't use pooled mode");
+		this.rule = rule;
+	}
+
+	@Override
+	public void process (HighlightTextArea textArea, Array<Highlight> highlights) {
+		if (this.textArea != textArea) {
+			if (this.textArea != null) this.textArea.removeAction(viewportAction);
+			this.textArea = textArea;
+			textArea.addAction(viewportAction);
+			lastText = null;
+		}
+
+		String text = textArea.getText();
+		if (text != lastText) {
+			lastText = text;
+			updateLineStarts(text);
+			blocks.clear();
+			blocks.setSize((lineStarts.size + BLOCK_LINES - 1) / BLOCK_LINES);
+		}
+
+		int firstBlock = getFirstVisibleLine() / BLOCK_LINES;
+		int lastBlock = Math.min(getLastVisibleLine() / BLOCK_LINES, blocks.size - 1);
+		for (int i = firstBlock; i <= lastBlock; i++) {
+			if (blocks.get(i) != null) continue;
+			Array<Highlight> block = new Array<Highlight>();
+			rule.process(text, getBlockStart(i), getBlockStart(i + 1), block);
+			blocks.set(i, block);
+		}
+
+		for (int i = 0; i < blocks.size; i++) {
+			Array<Highlight> block = blocks.get(i);
+			if (block != null) highlights.addAll(block);
+		}
+	}
+
+	private boolean isViewportProcessed () {
+		int firstBlock = getFirstVisibleLine() / BLOCK_LINES;
+		int lastBlock = Math.min(getLastVisibleLine() / BLOCK_LINES, blocks.size - 1);
+		for (int i = firstBlock; i <= lastBlock; i++) {
+			if (blocks.get(i) == null) return false;
+		}
+		return true;
+	}
+
+	private void updateLineStarts (String text) {
+		lineStarts.clear();
+		lineStarts.add(0);
+		int index = text.indexOf('\n');
+		while (index != -1) {
+			lineStarts.add(index + 1);
+			index = text.indexOf('\n', index + 1);
+		}
+	}
+
+	private int getBlockStart (int block) {
+		int line = block * BLOCK_LINES;
+		if (line >= lineStarts.size) return lastText.length();
+		return lineStarts.get(line);
+	}
+
+	private int getFirstVisibleLine () {
+		Actor parent = textArea.getParent();
+		if (parent instanceof ScrollPane == false) return 0;
+		ScrollPane pane = (ScrollPane) parent;
+		float lineHeight = textArea.getStyle().font.getLineHeight();
+		return Math.max(0, (int) (pane.getScrollY() / lineHeight) - marginLines);
+	}
+
+	private int getLastVisibleLine () {
+		Actor parent = textArea.getParent();
+		if (parent instanceof ScrollPane == false) return lineStarts.size - 1;
+		ScrollPane pane = (ScrollPane) parent;
+		float lineHeight = textArea.getStyle().font.getLineHeight();
+		return (int) ((pane.getScrollY() + pane.getScrollHeight()) / lineHeight) + marginLines;
+	}
+
+	/** @param marginLines amount of lines above and below visible area that are processed together with visible lines */
+	public void setMarginLines (int marginLines) {
+		this.marginLines = marginLines;
+	}
+
+	public int getMarginLines () {
+		return marginLines;
+	}
+
+	public RegexodusHighlightRule getRule () {
+		return rule;
+	}
+}
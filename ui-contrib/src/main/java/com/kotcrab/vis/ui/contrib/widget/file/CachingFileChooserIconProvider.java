@@ -1,31 +1,117 @@
 package com.kotcrab.vis.ui.contrib.widget.file;
 
 import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.scenes.scene2d.Action;
+import com.badlogic.gdx.scenes.scene2d.Actor;
+import com.badlogic.gdx.scenes.scene2d.Group;
+import com.badlogic.gdx.scenes.scene2d.ui.ScrollPane;
 import com.badlogic.gdx.scenes.scene2d.utils.Drawable;
 import com.badlogic.gdx.scenes.scene2d.utils.TextureRegionDrawable;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Queue;
+import com.badlogic.gdx.utils.Scaling;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.kotcrab.vis.ui.widget.file.FileChooser;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base implementation for icon providers. This is considered as internal API and should not be used directly.
  * @author Kotcrab
  */
 public abstract class CachingFileChooserIconProvider extends HighResFileChooserIconProvider {
-	private static final int MAX_CACHED = 600;
-	private static final int MAX_THREADS = 1;
+	private static final long DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+	private static final int ATLAS_PAGE_SIZE = 1024;
 
-	private Array<Thumbnail> thumbnails = new Array<Thumbnail>();
+	/** Access ordered, iteration starts from least recently used thumbnail. */
+	private LinkedHashMap<FileHandle, Thumbnail> thumbnails = new LinkedHashMap<FileHandle, Thumbnail>(16, 0.75f, true);
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private long usedBytes;
 
-	protected ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS);
+	private FileHandle currentDirectory;
+	/** Most recently visited directories, current directory first. Their thumbnails are evicted last. */
+	private final Array<FileHandle> recentDirectories = new Array<FileHandle>();
+	private int retainedDirectories = 3;
 
+	/**
+	 * Long lived worker pool, jobs made stale by view mode change are dropped, jobs of directory user left are paused,
+	 * jobs of visible items are started first. See {@link #execute(FileChooser.FileItem, Runnable)}.
+	 */
+	protected ExecutorService executor;
+	private ThreadPoolExecutor threadPool;
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private float lookAhead = 0.5f;
+	private long nextSequence;
+	private boolean prioritiesDirty;
+	private ScrollPane scrollPane;
+	private float lastScrollY = Float.NaN;
+	private float lastWidgetWidth = Float.NaN;
+	private float lastWidgetHeight = Float.NaN;
+	private final Vector2 tmpVector = new Vector2();
+	private final Array<ThumbnailJob> tmpJobs = new Array<ThumbnailJob>();
+	private final ArrayList<Runnable> drainedJobs = new ArrayList<Runnable>();
+	/** Jobs of items that are too far from visible area, moved back to pool queue when user scrolls close to them. */
+	private final Array<ThumbnailJob> parkedJobs = new Array<ThumbnailJob>();
+	/** Jobs of recent directories user left before they were started, resumed when user returns to directory. */
+	private final ObjectMap<FileHandle, Array<ThumbnailJob>> pausedJobs = new ObjectMap<FileHandle, Array<ThumbnailJob>>();
+	private final Action frameUpdater = new Action() {
+		@Override
+		public boolean act (float delta) {
+			updatePriorities();
+			processUploads();
+			return false;
+		}
+	};
+
+	private final ConcurrentLinkedQueue<Upload> uploads = new ConcurrentLinkedQueue<Upload>();
+	/** Thumbnails of view modes other than current, uploaded only when there are no thumbnails of current view mode queued. */
+	private final Queue<Upload> backgroundUploads = new Queue<Upload>();
+	private final ObjectMap<FileChooser.FileItem, Thumbnail> pendingIcons = new ObjectMap<FileChooser.FileItem, Thumbnail>();
+	private long uploadTimeBudget = TimeUnit.MILLISECONDS.toNanos(4);
+	private int uploadByteBudget = 1024 * 1024;
+	/** Pending thumbnail for which job is being scheduled, captured by jobs passed to {@link #execute(FileChooser.FileItem, Runnable)}. */
+	private PendingThumbnail schedulingPending;
+
+	private ThumbnailDiskCache diskCache;
+	private final ThumbnailMetrics.Recorder metrics = new ThumbnailMetrics.Recorder();
+	private volatile ThumbnailMetricsListener metricsListener;
+	private final ThumbnailAtlas atlas = new ThumbnailAtlas(ATLAS_PAGE_SIZE);
+
+	/** Creates provider using one worker thread per available processor. */
 	public CachingFileChooserIconProvider (FileChooser chooser) {
+		this(chooser, Runtime.getRuntime().availableProcessors());
+	}
+
+	/** @param threads amount of worker threads used for thumbnail generation */
+	public CachingFileChooserIconProvider (FileChooser chooser, int threads) {
 		super(chooser);
+		threadPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(11, new JobComparator()),
+				new ThreadFactory() {
+					private int count;
+
+					@Override
+					public Thread newThread (Runnable runnable) {
+						Thread thread = new Thread(runnable, "FileChooserThumbnails-" + count++);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		threadPool.prestartAllCoreThreads();
+		executor = threadPool;
+
+		currentDirectory = chooser.getCurrentDirectory();
+		if (currentDirectory != null) recentDirectories.add(currentDirectory);
 	}
 
 	@Override
@@ -35,15 +121,40 @@ public abstract class CachingFileChooserIconProvider extends HighResFileChooserI
 			final float thumbSize = viewMode.getGridSize(chooser.getSizes());
 			final FileHandle file = item.getFile();
 
-			Thumbnail thumbnail = getThumbnail(file);
+			Thumbnail thumbnail = thumbnails.get(file);
 			if (thumbnail == null) {
-				thumbnail = new Thumbnail(file);
-				thumbnails.add(thumbnail);
+				thumbnail = new Thumbnail(file, atlas);
+				thumbnails.put(file, thumbnail);
 			}
 
-			if (thumbnail.getThumbnail(viewMode) != null) return thumbnail.getThumbnail(viewMode);
+			thumbnail.directory = currentDirectory;
+			if (thumbnail.getThumbnail(viewMode) != null) {
+				recordMemoryCacheLookup(file, viewMode, true);
+				return thumbnail.getThumbnail(viewMode);
+			}
 
-			scheduleThumbnailGeneration(thumbnail, viewMode, thumbSize, item);
+			// thumbnail is already being generated, item will get it when job finishes
+			int index = Thumbnail.getIndex(viewMode);
+			PendingThumbnail pending = thumbnail.pending[index];
+			if (pending != null) {
+				if (pending.items.contains(item, true) == false) pending.items.add(item);
+				if (pending.job != null && pending.job.item != item) { // item was recreated, e.g. user returned to directory
+					pending.job.item = item;
+					prioritiesDirty = true;
+				}
+				return super.getImageIcon(item);
+			}
+
+			recordMemoryCacheLookup(file, viewMode, false);
+			pending = new PendingThumbnail(thumbnail, viewMode);
+			pending.items.add(item);
+			thumbnail.pending[index] = pending;
+			schedulingPending = pending;
+			try {
+				scheduleThumbnailGeneration(thumbnail, viewMode, thumbSize, item);
+			} finally {
+				schedulingPending = null;
+			}
 		}
 
 		return super.getImageIcon(item);
@@ -51,20 +162,442 @@ public abstract class CachingFileChooserIconProvider extends HighResFileChooserI
 
 	protected abstract void scheduleThumbnailGeneration (Thumbnail thumbnail, FileChooser.ViewMode viewMode, float thumbSize, FileChooser.FileItem item);
 
-	private Thumbnail getThumbnail (FileHandle file) {
-		for (Thumbnail thumbnail : thumbnails) {
-			if (thumbnail.file.equals(file)) {
-				return thumbnail;
+	/**
+	 * Queues generated thumbnail for upload, can be called from any thread. Queued thumbnails are uploaded on GL thread
+	 * within per frame budget (see {@link #setUploadTimeBudget(long)} and {@link #setUploadByteBudget(int)}) so many
+	 * thumbnails finished at once don't cause frame drops. If view mode is current view mode, thumbnail is set as item icon,
+	 * otherwise it's only cached so later view mode change doesn't need to generate it again. Such thumbnails are uploaded
+	 * after all queued thumbnails of current view mode and are dropped if they don't fit into memory budget. Pixmap will
+	 * be disposed after upload.
+	 */
+	protected void queueUpload (Thumbnail thumbnail, FileChooser.ViewMode viewMode, FileChooser.FileItem item, Pixmap pixmap) {
+		uploads.add(new Upload(thumbnail, viewMode, item, pixmap));
+	}
+
+	/**
+	 * Uploads generated thumbnail immediately and sets it as item icon. Must be called from GL thread. Thumbnails
+	 * exceeding memory budget are evicted afterwards. Pixmap is not disposed. Prefer {@link #queueUpload(Thumbnail, FileChooser.ViewMode, FileChooser.FileItem, Pixmap)}.
+	 */
+	protected void updateItemIcon (Thumbnail thumbnail, FileChooser.ViewMode viewMode, FileChooser.FileItem item, Pixmap pixmap) {
+		putThumb(thumbnail, viewMode, pixmap);
+		item.setIcon(thumbnail.getThumbnail(viewMode), Scaling.fit);
+		optimizeCache();
+	}
+
+	/**
+	 * Called every frame, uploads queued thumbnails until frame budget is used, at least one thumbnail is always uploaded.
+	 * Thumbnails of current view mode are uploaded first.
+	 */
+	private void processUploads () {
+		if (uploads.isEmpty() && backgroundUploads.size == 0) return;
+		long start = TimeUtils.nanoTime();
+		int bytes = 0;
+		FileChooser.ViewMode currentViewMode = chooser.getViewMode();
+
+		while (bytes == 0 || (bytes < uploadByteBudget && TimeUtils.timeSinceNanos(start) < uploadTimeBudget)) {
+			Upload upload = uploads.poll();
+			if (upload == null) {
+				if (backgroundUploads.size == 0) break;
+				upload = backgroundUploads.removeFirst();
+				// thumbnail of other view mode would be evicted right away, view mode may have changed since it was deferred
+				if (upload.viewMode != currentViewMode && usedBytes + upload.pixmap.getPixels().capacity() > memoryBudget) {
+					upload.pixmap.dispose();
+					continue;
+				}
+			} else if (upload.pixmap == null) { // job finished, thumbnail can be requested again if job didn't provide it
+				upload.pending.finish();
+				continue;
+			} else if (upload.viewMode != currentViewMode) {
+				backgroundUploads.addLast(upload);
+				continue;
+			}
+			try {
+				bytes += upload.pixmap.getPixels().capacity();
+				long uploadStart = TimeUtils.nanoTime();
+				putThumb(upload.thumbnail, upload.viewMode, upload.pixmap);
+				recordUpload(upload.thumbnail.file, upload.viewMode, TimeUtils.timeSinceNanos(uploadStart));
+				if (upload.viewMode == currentViewMode) {
+					if (upload.item != null) pendingIcons.put(upload.item, upload.thumbnail);
+					PendingThumbnail pending = upload.thumbnail.pending[Thumbnail.getIndex(upload.viewMode)];
+					if (pending != null) {
+						for (FileChooser.FileItem item : pending.items) {
+							pendingIcons.put(item, upload.thumbnail);
+						}
+					}
+				}
+			} catch (GdxRuntimeException e) {
+				reportFailure(upload.thumbnail.file, e);
+			} finally {
+				upload.pixmap.dispose();
 			}
 		}
 
+		// single icon update per item, even if multiple thumbnails for it were uploaded
+		for (ObjectMap.Entry<FileChooser.FileItem, Thumbnail> entry : pendingIcons.entries()) {
+			Drawable icon = entry.value.getThumbnail(currentViewMode);
+			if (icon != null) entry.key.setIcon(icon, Scaling.fit);
+		}
+		pendingIcons.clear();
+		optimizeCache();
+	}
+
+	/**
+	 * @param uploadTimeBudget maximum time spent uploading thumbnails per frame in milliseconds, default is 4. At least one
+	 * thumbnail is uploaded per frame regardless of budget.
+	 */
+	public void setUploadTimeBudget (long uploadTimeBudget) {
+		this.uploadTimeBudget = TimeUnit.MILLISECONDS.toNanos(uploadTimeBudget);
+	}
+
+	/** @return maximum time spent uploading thumbnails per frame in milliseconds */
+	public long getUploadTimeBudget () {
+		return TimeUnit.NANOSECONDS.toMillis(uploadTimeBudget);
+	}
+
+	/**
+	 * @param uploadByteBudget maximum amount of pixel data uploaded per frame in bytes, default is 1 MB. At least one
+	 * thumbnail is uploaded per frame regardless of budget.
+	 */
+	public void setUploadByteBudget (int uploadByteBudget) {
+		this.uploadByteBudget = uploadByteBudget;
+	}
+
+	public int getUploadByteBudget () {
+		return uploadByteBudget;
+	}
+
+	private void putThumb (Thumbnail thumbnail, FileChooser.ViewMode viewMode, Pixmap pixmap) {
+		Thumbnail current = thumbnails.get(thumbnail.file);
+		if (current != thumbnail) { // entry was evicted while job was running
+			if (current != null) {
+				usedBytes -= current.getBytes();
+				current.dispose();
+			}
+			thumbnails.put(thumbnail.file, thumbnail);
+		}
+
+		usedBytes -= thumbnail.getBytes();
+		thumbnail.addThumb(viewMode, pixmap);
+		usedBytes += thumbnail.getBytes();
+	}
+
+	/**
+	 * Executes thumbnail job on worker pool. If view mode changes before job is started, job is dropped. Jobs that are
+	 * already running can check {@link #isCancelled(int)} to stop early. If directory changes before job is started,
+	 * job is paused until user returns to directory, see {@link #setRetainedDirectories(int)}. Must be called from GL thread.
+	 * @param item item for which thumbnail is generated, jobs of items visible in file chooser pane are started first,
+	 * followed by items in look ahead band (see {@link #setLookAhead(float)}). Jobs of items further away wait until user
+	 * scrolls close to them. May be null, then job is not prioritized.
+	 * <p>
+	 * When called from {@link #scheduleThumbnailGeneration(Thumbnail, FileChooser.ViewMode, float, FileChooser.FileItem)}
+	 * job serves all items requesting same thumbnail until it finishes, thumbnail is not scheduled again in the meantime.
+	 */
+	protected void execute (FileChooser.FileItem item, Runnable job) {
+		if (chooser.getActions().contains(frameUpdater, true) == false) chooser.addAction(frameUpdater);
+		prioritiesDirty = true;
+		ThumbnailJob thumbnailJob = new ThumbnailJob(item, job, generation.get(), nextSequence++, schedulingPending);
+		if (schedulingPending != null) schedulingPending.job = thumbnailJob;
+		executor.execute(thumbnailJob);
+	}
+
+	/** Executes job without prioritizing it. See {@link #execute(FileChooser.FileItem, Runnable)}. */
+	protected void execute (Runnable job) {
+		execute(null, job);
+	}
+
+	/**
+	 * Called every frame, recalculates priorities of pending jobs after new jobs were added or file list was scrolled
+	 * or laid out again.
+	 */
+	private void updatePriorities () {
+		if (scrollPane != null && scrollPane.getStage() == null) scrollPane = null;
+		if (scrollPane != null) {
+			Actor widget = scrollPane.getWidget();
+			if (scrollPane.getVisualScrollY() != lastScrollY || widget.getWidth() != lastWidgetWidth
+					|| widget.getHeight() != lastWidgetHeight) prioritiesDirty = true;
+		}
+		if (prioritiesDirty == false) return;
+		prioritiesDirty = false;
+
+		tmpJobs.clear();
+		drainQueuedJobs(tmpJobs);
+		tmpJobs.addAll(parkedJobs);
+		parkedJobs.clear();
+
+		for (ThumbnailJob job : tmpJobs) {
+			if (isCancelled(job.generation)) continue;
+			job.distance = getDistanceFromViewport(job.item);
+			if (scrollPane != null && job.distance > scrollPane.getHeight() * lookAhead)
+				parkedJobs.add(job);
+			else
+				threadPool.getQueue().offer(job);
+		}
+		tmpJobs.clear();
+
+		if (scrollPane != null) {
+			lastScrollY = scrollPane.getVisualScrollY();
+			lastWidgetWidth = scrollPane.getWidget().getWidth();
+			lastWidgetHeight = scrollPane.getWidget().getHeight();
+		}
+	}
+
+	/**
+	 * Moves thumbnail jobs that were not started yet from pool queue to given array, other jobs are queued again. Jobs
+	 * taken by worker in the meantime are not drained so they are never queued twice.
+	 */
+	private void drainQueuedJobs (Array<ThumbnailJob> jobs) {
+		threadPool.getQueue().drainTo(drainedJobs);
+		for (Runnable job : drainedJobs) {
+			if (job instanceof ThumbnailJob)
+				jobs.add((ThumbnailJob) job);
+			else
+				threadPool.getQueue().offer(job);
+		}
+		drainedJobs.clear();
+	}
+
+	/** @return distance in pixels between item and visible area of file chooser pane, 0 if item is visible or its position is unknown */
+	private float getDistanceFromViewport (FileChooser.FileItem item) {
+		if (item == null) return 0;
+		ScrollPane pane = findScrollPane(item);
+		if (pane == null) return 0;
+		scrollPane = pane;
+
+		item.localToAscendantCoordinates(pane, tmpVector.set(0, 0));
+		float bottom = tmpVector.y;
+		float top = bottom + item.getHeight();
+		if (top < 0) return -top;
+		if (bottom > pane.getHeight()) return bottom - pane.getHeight();
+		return 0;
+	}
+
+	private ScrollPane findScrollPane (Actor actor) {
+		Group parent = actor.getParent();
+		while (parent != null) {
+			if (parent instanceof ScrollPane) return (ScrollPane) parent;
+			parent = parent.getParent();
+		}
 		return null;
 	}
 
+	/**
+	 * Sets size of area around visible part of file chooser pane for which thumbnails are generated ahead of time.
+	 * Thumbnails of items outside of this area are generated once user scrolls close to them.
+	 * @param lookAhead size of look ahead band above and below visible area, relative to pane height, default is 0.5
+	 */
+	public void setLookAhead (float lookAhead) {
+		this.lookAhead = lookAhead;
+		prioritiesDirty = true;
+	}
+
+	public float getLookAhead () {
+		return lookAhead;
+	}
+
+	/** @return current generation, changed every time view mode changes */
+	protected int getGeneration () {
+		return generation.get();
+	}
+
+	/** @return true if view mode changed since given generation was obtained */
+	protected boolean isCancelled (int generation) {
+		return this.generation.get() != generation;
+	}
+
+	/**
+	 * Sets persistent thumbnail store. When set, providers read thumbnails from it before generating them and store
+	 * newly generated thumbnails in it.
+	 * @param diskCache disk cache, may be null to disable persistent caching
+	 */
+	public void setDiskCache (ThumbnailDiskCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	public ThumbnailDiskCache getDiskCache () {
+		return diskCache;
+	}
+
+	/**
+	 * Sets maximum amount of texture memory used by cached thumbnails. When budget is exceeded least recently used
+	 * thumbnails are evicted, thumbnails of view modes other than current are evicted first, then thumbnails of directories
+	 * visited least recently. Thumbnails displayed in current directory are never evicted, so budget may be exceeded
+	 * temporarily for very large directories.
+	 * @param memoryBudget budget in bytes, default is 64 MB
+	 */
+	public void setMemoryBudget (long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		optimizeCache();
+	}
+
+	public long getMemoryBudget () {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return amount of texture memory in bytes used by cached thumbnails, that is size of atlas space they occupy.
+	 * Memory of atlas pages is released when all their thumbnails are removed, see {@link ThumbnailAtlas#getTextureBytes()}.
+	 */
+	public long getUsedMemory () {
+		return usedBytes;
+	}
+
+	/** @return amount of files which have at least one thumbnail cached */
+	public int getCachedThumbnailCount () {
+		int count = 0;
+		for (Thumbnail thumbnail : thumbnails.values()) {
+			if (thumbnail.getBytes() != 0) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Sets listener notified about events of thumbnail pipeline. Listener is called from GL and worker threads, see
+	 * {@link ThumbnailMetricsListener}.
+	 * @param metricsListener listener, may be null
+	 */
+	public void setMetricsListener (ThumbnailMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	public ThumbnailMetricsListener getMetricsListener () {
+		return metricsListener;
+	}
+
+	/**
+	 * Metrics are always collected, collecting them costs few atomic adds per thumbnail. Must be called from GL thread.
+	 * @return snapshot of thumbnail pipeline metrics
+	 */
+	public ThumbnailMetrics getMetrics () {
+		return metrics.snapshot(threadPool.getQueue().size(), parkedJobs.size, threadPool.getActiveCount());
+	}
+
+	/** Resets counters and times returned by {@link #getMetrics()}. */
+	public void resetMetrics () {
+		metrics.reset();
+	}
+
+	private void recordMemoryCacheLookup (FileHandle file, FileChooser.ViewMode viewMode, boolean hit) {
+		metrics.memoryCacheLookup(hit);
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.thumbnailRequested(file, viewMode, hit);
+	}
+
+	/** Records lookup of thumbnail in {@link ThumbnailDiskCache}. Can be called from any thread. */
+	protected void recordDiskCacheLookup (FileHandle file, FileChooser.ViewMode viewMode, boolean hit) {
+		metrics.diskCacheLookup(hit);
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.diskCacheLookup(file, viewMode, hit);
+	}
+
+	/** Records time spent reading image header. Can be called from any thread. */
+	protected void recordHeaderProbe (FileHandle file, long nanos) {
+		metrics.headerProbed(nanos);
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.headerProbed(file, nanos);
+	}
+
+	/** Records time spent decoding image. Can be called from any thread. */
+	protected void recordDecode (FileHandle file, long nanos) {
+		metrics.imageDecoded(nanos);
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.imageDecoded(file, nanos);
+	}
+
+	/** Records time spent scaling image to thumbnail of given view mode. Can be called from any thread. */
+	protected void recordScale (FileHandle file, FileChooser.ViewMode viewMode, long nanos) {
+		metrics.imageScaled(nanos);
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.imageScaled(file, viewMode, nanos);
+	}
+
+	private void recordUpload (FileHandle file, FileChooser.ViewMode viewMode, long nanos) {
+		metrics.thumbnailUploaded(nanos);
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.thumbnailUploaded(file, viewMode, nanos);
+	}
+
+	private void recordEviction (FileHandle file, FileChooser.ViewMode viewMode) {
+		metrics.thumbnailEvicted();
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null) listener.thumbnailEvicted(file, viewMode);
+	}
+
+	/**
+	 * Reports that thumbnail couldn't be generated. Exception is passed to metrics listener, if there is no listener its
+	 * stack trace is printed. Can be called from any thread.
+	 */
+	protected void reportFailure (FileHandle file, Exception e) {
+		metrics.thumbnailFailed();
+		ThumbnailMetricsListener listener = metricsListener;
+		if (listener != null)
+			listener.thumbnailFailed(file, e);
+		else
+			e.printStackTrace();
+	}
+
 	@Override
 	public void directoryChanged (FileHandle newDirectory) {
 		super.directoryChanged(newDirectory);
-		restartThumbnailGeneration();
+		pauseThumbnailGeneration();
+
+		currentDirectory = newDirectory;
+		recentDirectories.removeValue(newDirectory, false);
+		recentDirectories.insert(0, newDirectory);
+		trimRecentDirectories();
+
+		Array<ThumbnailJob> jobs = pausedJobs.remove(newDirectory);
+		if (jobs != null) {
+			parkedJobs.addAll(jobs); // moved to pool queue by next priorities update
+			prioritiesDirty = true;
+		}
+		optimizeCache();
+	}
+
+	/** Moves jobs that were not started yet to paused jobs of current directory, jobs that are already running are finished. */
+	private void pauseThumbnailGeneration () {
+		if (currentDirectory == null) {
+			threadPool.getQueue().clear();
+			parkedJobs.clear();
+			return;
+		}
+
+		Array<ThumbnailJob> jobs = pausedJobs.get(currentDirectory);
+		if (jobs == null) {
+			jobs = new Array<ThumbnailJob>();
+			pausedJobs.put(currentDirectory, jobs);
+		}
+		drainQueuedJobs(jobs);
+		jobs.addAll(parkedJobs);
+		parkedJobs.clear();
+	}
+
+	/**
+	 * Sets amount of recently visited directories, including current one, for which thumbnails are retained. When budget
+	 * is exceeded thumbnails of these directories are evicted after thumbnails of other directories. Thumbnail generation
+	 * for retained directory user left is paused and resumed when user returns to it. Useful when user navigates back
+	 * and forth between directories.
+	 * @param retainedDirectories amount of directories, default is 3, minimum is 1
+	 */
+	public void setRetainedDirectories (int retainedDirectories) {
+		if (retainedDirectories < 1) throw new IllegalArgumentException("retainedDirectories must be at least 1");
+		this.retainedDirectories = retainedDirectories;
+		trimRecentDirectories();
+		optimizeCache();
+	}
+
+	public int getRetainedDirectories () {
+		return retainedDirectories;
+	}
+
+	/** Forgets directories that are no longer retained, their paused jobs are dropped. */
+	private void trimRecentDirectories () {
+		while (recentDirectories.size > retainedDirectories) {
+			Array<ThumbnailJob> jobs = pausedJobs.remove(recentDirectories.pop());
+			if (jobs == null) continue;
+			for (ThumbnailJob job : jobs) {
+				if (job.pending != null) job.pending.finish();
+			}
+		}
 	}
 
 	@Override
@@ -74,70 +607,256 @@ public abstract class CachingFileChooserIconProvider extends HighResFileChooserI
 	}
 
 	private void restartThumbnailGeneration () {
-		executor.shutdownNow();
-		executor = Executors.newFixedThreadPool(MAX_THREADS);
+		generation.incrementAndGet();
+		threadPool.getQueue().clear();
+		parkedJobs.clear();
+		pausedJobs.clear();
+		for (Thumbnail thumbnail : thumbnails.values()) {
+			for (int i = 0; i < Thumbnail.VIEW_MODES; i++) {
+				thumbnail.pending[i] = null;
+			}
+		}
 		optimizeCache();
 	}
 
 	@Override
 	public void dispose () {
 		super.dispose();
+		chooser.removeAction(frameUpdater);
+		Upload upload;
+		while ((upload = uploads.poll()) != null) {
+			if (upload.pixmap != null) upload.pixmap.dispose();
+		}
+		while (backgroundUploads.size > 0) {
+			backgroundUploads.removeFirst().pixmap.dispose();
+		}
+		parkedJobs.clear();
+		pausedJobs.clear();
 		executor.shutdownNow();
-		for (Thumbnail thumbnail : thumbnails) {
+		for (Thumbnail thumbnail : thumbnails.values()) {
 			thumbnail.dispose();
 		}
 		thumbnails.clear();
+		usedBytes = 0;
+		atlas.dispose();
+	}
+
+	/** @return atlas holding thumbnail textures */
+	public ThumbnailAtlas getAtlas () {
+		return atlas;
 	}
 
 	private void optimizeCache () {
-		if (thumbnails.size > MAX_CACHED) {
-			for (int i = 0; i <= thumbnails.size - MAX_CACHED; i++) {
-				thumbnails.get(i).dispose();
+		int currentIndex = Thumbnail.getIndex(chooser.getViewMode());
+
+		// first evict thumbnails of other view modes, least recently used first
+		Iterator<Thumbnail> iterator = thumbnails.values().iterator();
+		while (usedBytes > memoryBudget && iterator.hasNext()) {
+			Thumbnail thumbnail = iterator.next();
+			for (int i = 0; i < Thumbnail.VIEW_MODES; i++) {
+				if (i != currentIndex) evict(thumbnail, i);
 			}
-			thumbnails.removeRange(0, thumbnails.size - MAX_CACHED);
+		}
+
+		// then thumbnails of current view mode that are not displayed in current directory, starting with directories
+		// that are not retained, followed by retained directories visited least recently
+		if (currentIndex != -1) {
+			for (int rank = recentDirectories.size; rank >= 1 && usedBytes > memoryBudget; rank--) {
+				iterator = thumbnails.values().iterator();
+				while (usedBytes > memoryBudget && iterator.hasNext()) {
+					Thumbnail thumbnail = iterator.next();
+					if (getDirectoryRank(thumbnail.directory) >= rank) evict(thumbnail, currentIndex);
+				}
+			}
+		}
+
+		iterator = thumbnails.values().iterator();
+		while (iterator.hasNext()) {
+			Thumbnail thumbnail = iterator.next();
+			if (thumbnail.getBytes() == 0 && thumbnail.isPending() == false && getDirectoryRank(thumbnail.directory) != 0)
+				iterator.remove();
+		}
+	}
+
+	/** @return 0 for current directory, position in recently visited directories or their amount if directory isn't retained */
+	private int getDirectoryRank (FileHandle directory) {
+		if (directory == null) return currentDirectory == null ? 0 : recentDirectories.size;
+		int rank = recentDirectories.indexOf(directory, false);
+		return rank == -1 ? recentDirectories.size : rank;
+	}
+
+	private void evict (Thumbnail thumbnail, int index) {
+		long bytes = thumbnail.removeThumb(index);
+		if (bytes == 0) return;
+		usedBytes -= bytes;
+		recordEviction(thumbnail.file, Thumbnail.getViewMode(index));
+	}
+
+	private class ThumbnailJob implements Runnable {
+		/** Written only by GL thread, replaced when item is recreated. */
+		private FileChooser.FileItem item;
+		private final Runnable job;
+		private final int generation;
+		private final long sequence;
+		private final PendingThumbnail pending;
+		/** Written only by GL thread while job is not queued. */
+		private float distance;
+
+		public ThumbnailJob (FileChooser.FileItem item, Runnable job, int generation, long sequence, PendingThumbnail pending) {
+			this.item = item;
+			this.job = job;
+			this.generation = generation;
+			this.sequence = sequence;
+			this.pending = pending;
+		}
+
+		@Override
+		public void run () {
+			try {
+				if (isCancelled(generation)) return;
+				job.run();
+			} finally {
+				// queued after all thumbnails uploaded by job, so attached items get them first
+				if (pending != null) uploads.add(new Upload(pending));
+			}
+		}
+	}
+
+	/** Thumbnail which job was scheduled but not finished yet, items requesting it in the meantime are attached to it. */
+	private static class PendingThumbnail {
+		private final Thumbnail thumbnail;
+		private final int index;
+		private final Array<FileChooser.FileItem> items = new Array<FileChooser.FileItem>(1);
+		private ThumbnailJob job;
+
+		public PendingThumbnail (Thumbnail thumbnail, FileChooser.ViewMode viewMode) {
+			this.thumbnail = thumbnail;
+			this.index = Thumbnail.getIndex(viewMode);
+		}
+
+		/** Must be called from GL thread. Pending thumbnail may have been replaced by newer one after restart. */
+		public void finish () {
+			if (thumbnail.pending[index] == this) thumbnail.pending[index] = null;
+		}
+	}
+
+	private static class Upload {
+		private final Thumbnail thumbnail;
+		private final FileChooser.ViewMode viewMode;
+		private final FileChooser.FileItem item;
+		private final Pixmap pixmap;
+		private final PendingThumbnail pending;
+
+		public Upload (Thumbnail thumbnail, FileChooser.ViewMode viewMode, FileChooser.FileItem item, Pixmap pixmap) {
+			this.thumbnail = thumbnail;
+			this.viewMode = viewMode;
+			this.item = item;
+			this.pixmap = pixmap;
+			this.pending = null;
+		}
+
+		/** Creates marker of finished job, it doesn't carry any pixmap. */
+		public Upload (PendingThumbnail pending) {
+			this.thumbnail = pending.thumbnail;
+			this.viewMode = null;
+			this.item = null;
+			this.pixmap = null;
+			this.pending = pending;
+		}
+	}
+
+	/** Orders jobs by distance from visible area, then in order they were scheduled. */
+	private static class JobComparator implements Comparator<Runnable> {
+		@Override
+		public int compare (Runnable o1, Runnable o2) {
+			float distance1 = o1 instanceof ThumbnailJob ? ((ThumbnailJob) o1).distance : 0;
+			float distance2 = o2 instanceof ThumbnailJob ? ((ThumbnailJob) o2).distance : 0;
+			if (distance1 != distance2) return distance1 < distance2 ? -1 : 1;
+			long sequence1 = o1 instanceof ThumbnailJob ? ((ThumbnailJob) o1).sequence : Long.MIN_VALUE;
+			long sequence2 = o2 instanceof ThumbnailJob ? ((ThumbnailJob) o2).sequence : Long.MIN_VALUE;
+			return sequence1 < sequence2 ? -1 : (sequence1 == sequence2 ? 0 : 1);
 		}
 	}
 
 	protected static class Thumbnail implements Disposable {
+		private static final int VIEW_MODES = 3;
+
 		private FileHandle file;
-		private Texture textures[] = new Texture[3];
-		private TextureRegionDrawable regions[] = new TextureRegionDrawable[3];
+		private ThumbnailAtlas atlas;
+		private ThumbnailAtlas.ThumbnailRegion atlasRegions[] = new ThumbnailAtlas.ThumbnailRegion[VIEW_MODES];
+		private TextureRegionDrawable regions[] = new TextureRegionDrawable[VIEW_MODES];
+		/** Directory in which thumbnail was last requested, used to evict thumbnails of least recently visited directories last. */
+		private FileHandle directory;
+		/** Jobs generating thumbnails of view modes, accessed only by GL thread. */
+		private PendingThumbnail pending[] = new PendingThumbnail[VIEW_MODES];
 
-		public Thumbnail (FileHandle file) {
+		public Thumbnail (FileHandle file, ThumbnailAtlas atlas) {
 			this.file = file;
+			this.atlas = atlas;
 		}
 
-		public void addThumb (FileChooser.ViewMode viewMode, Texture texture) {
-			int index = -1;
-			if (viewMode == FileChooser.ViewMode.SMALL_ICONS)
-				index = 0;
-			if (viewMode == FileChooser.ViewMode.MEDIUM_ICONS)
-				index = 1;
-			if (viewMode == FileChooser.ViewMode.BIG_ICONS)
-				index = 2;
+		/** Uploads thumbnail to atlas, must be called from GL thread. Pixmap is not disposed. */
+		public void addThumb (FileChooser.ViewMode viewMode, Pixmap pixmap) {
+			int index = getIndex(viewMode);
+			removeThumb(index);
+			atlasRegions[index] = atlas.add(pixmap);
+			regions[index] = new TextureRegionDrawable(atlasRegions[index]);
+		}
 
-			textures[index] = texture;
-			regions[index] = new TextureRegionDrawable(new TextureRegion(texture));
+		private boolean isPending () {
+			for (PendingThumbnail job : pending) {
+				if (job != null) return true;
+			}
+			return false;
 		}
 
 		public Drawable getThumbnail (FileChooser.ViewMode viewMode) {
+			int index = getIndex(viewMode);
+			return index == -1 ? null : regions[index];
+		}
+
+		/** @return amount of bytes of texture memory released */
+		private long removeThumb (int index) {
+			ThumbnailAtlas.ThumbnailRegion region = atlasRegions[index];
+			if (region == null) return 0;
+			atlasRegions[index] = null;
+			regions[index] = null;
+			atlas.free(region);
+			return region.getBytes();
+		}
+
+		/** @return amount of texture memory used by all view modes thumbnails */
+		public long getBytes () {
+			long bytes = 0;
+			for (ThumbnailAtlas.ThumbnailRegion region : atlasRegions) {
+				if (region != null) bytes += region.getBytes();
+			}
+			return bytes;
+		}
+
+		private static int getIndex (FileChooser.ViewMode viewMode) {
 			if (viewMode == FileChooser.ViewMode.SMALL_ICONS)
-				return regions[0];
+				return 0;
 			if (viewMode == FileChooser.ViewMode.MEDIUM_ICONS)
-				return regions[1];
+				return 1;
 			if (viewMode == FileChooser.ViewMode.BIG_ICONS)
-				return regions[2];
-			return null;
+				return 2;
+			return -1;
+		}
+
+		private static FileChooser.ViewMode getViewMode (int index) {
+			if (index == 0)
+				return FileChooser.ViewMode.SMALL_ICONS;
+			if (index == 1)
+				return FileChooser.ViewMode.MEDIUM_ICONS;
+			return FileChooser.ViewMode.BIG_ICONS;
 		}
 
 		@Override
 		public void dispose () {
-			if (textures[0] != null)
-				textures[0].dispose();
-			if (textures[1] != null)
-				textures[1].dispose();
-			if (textures[2] != null)
-				textures[2].dispose();
+			for (int i = 0; i < VIEW_MODES; i++) {
+				removeThumb(i);
+			}
 		}
 	}
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+/**
+ * Extracts JPEG thumbnail embedded in EXIF APP1 segment of JPEG file, segment is found by {@link ImageInfo} while it
+ * reads file header. Reading embedded thumbnail is much cheaper than decoding the image.
+ * @author Kotcrab
+ */
+class ExifThumbnail {
+	private static final int TAG_COMPRESSION = 0x0103;
+	private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+	private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+	private static final int COMPRESSION_JPEG = 6;
+	private static final int TYPE_SHORT = 3;
+
+	private ExifThumbnail () {
+	}
+
+	/**
+	 * @param data contents of JPEG APP1 segment, without marker and length
+	 * @return bytes of embedded JPEG thumbnail or null if segment isn't EXIF segment or doesn't contain thumbnail
+	 */
+	public static byte[] parse (byte[] data) {
+		if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f' || data[4] != 0 || data[5] != 0)
+			return null;
+
+		int tiff = 6;
+		boolean littleEndian;
+		if (data[tiff] == 'I' && data[tiff + 1] == 'I')
+			littleEndian = true;
+		else if (data[tiff] == 'M' && data[tiff + 1] == 'M')
+			littleEndian = false;
+		else
+			return null;
+
+		if (readShort(data, tiff + 2, littleEndian) != 42) return null;
+
+		// skip IFD0 describing main image, IFD1 describes thumbnail
+		int ifd0Offset = readInt(data, tiff + 4, littleEndian);
+		if (isOutside(data, tiff, ifd0Offset, 2)) return null;
+		int ifd0 = tiff + ifd0Offset;
+		int ifd0Entries = readShort(data, ifd0, littleEndian);
+		int nextIfdOffset = ifd0 + 2 + ifd0Entries * 12;
+		if (nextIfdOffset > data.length - 4) return null;
+		int ifd1Offset = readInt(data, nextIfdOffset, littleEndian);
+		if (ifd1Offset <= 0 || isOutside(data, tiff, ifd1Offset, 2)) return null;
+
+		int ifd1 = tiff + ifd1Offset;
+		int entries = readShort(data, ifd1, littleEndian);
+		if (ifd1 + 2 + entries * 12 > data.length) return null;
+
+		int compression = COMPRESSION_JPEG;
+		int offset = -1;
+		int length = -1;
+		for (int i = 0; i < entries; i++) {
+			int entry = ifd1 + 2 + i * 12;
+			int tag = readShort(data, entry, littleEndian);
+			int type = readShort(data, entry + 2, littleEndian);
+			int value = type == TYPE_SHORT ? readShort(data, entry + 8, littleEndian) : readInt(data, entry + 8, littleEndian);
+			if (tag == TAG_COMPRESSION) compression = value;
+			if (tag == TAG_THUMBNAIL_OFFSET) offset = value;
+			if (tag == TAG_THUMBNAIL_LENGTH) length = value;
+		}
+
+		if (compression != COMPRESSION_JPEG || offset <= 0 || length <= 0 || isOutside(data, tiff, offset, length))
+			return null;
+
+		byte[] thumbnail = new byte[length];
+		System.arraycopy(data, tiff + offset, thumbnail, 0, length);
+		return thumbnail;
+	}
+
+	/**
+	 * Offsets are read from file so they can be arbitrary, check is written so it can't overflow.
+	 * @return true if size bytes at offset from TIFF header don't fit into data
+	 */
+	private static boolean isOutside (byte[] data, int tiff, int offset, int size) {
+		return offset < 0 || offset > data.length - tiff - size;
+	}
+
+	private static int readShort (byte[] data, int index, boolean littleEndian) {
+		int b1 = data[index] & 0xFF;
+		int b2 = data[index + 1] & 0xFF;
+		return littleEndian ? (b2 << 8) | b1 : (b1 << 8) | b2;
+	}
+
+	private static int readInt (byte[] data, int index, boolean littleEndian) {
+		int s1 = readShort(data, index, littleEndian);
+		int s2 = readShort(data, index + 2, littleEndian);
+		return littleEndian ? (s2 << 16) | s1 : (s1 << 16) | s2;
+	}
+}
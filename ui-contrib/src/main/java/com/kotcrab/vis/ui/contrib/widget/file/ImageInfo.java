@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads image format and size from file header. Header is read with single bounded read, more data is read only when
+ * JPEG markers preceding frame header don't fit into it, for example because of large EXIF segment. Supports JPEG (all
+ * frame types), PNG, GIF, BMP, WebP and TGA. Embedded EXIF thumbnail of JPEG file is extracted on the way if requested.
+ * @author Kotcrab
+ */
+class ImageInfo {
+	private static final int PROBE_SIZE = 8192;
+
+	enum Format {
+		JPEG, PNG, GIF, BMP, WEBP, TGA, UNKNOWN;
+
+		/** @return true if format can be loaded directly by libGDX {@link com.badlogic.gdx.graphics.Pixmap} */
+		public boolean isPixmapSupported () {
+			return this == JPEG || this == PNG || this == BMP || this == GIF || this == TGA;
+		}
+	}
+
+	private Format format = Format.UNKNOWN;
+	private int width = -1;
+	private int height = -1;
+	private byte[] exifThumbnail;
+
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocate(PROBE_SIZE);
+	/** File position of first buffered byte. */
+	private long bufferStart;
+
+	/**
+	 * @param file image file
+	 * @param readExifThumbnail if true embedded thumbnail of JPEG file will be extracted, see {@link #getExifThumbnail()}
+	 * @throws IOException if file can't be read, truncated file is not an error, its size stays unknown
+	 */
+	public ImageInfo (FileHandle file, boolean readExifThumbnail) throws IOException {
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(file.file());
+			channel = in.getChannel();
+			fill(0, PROBE_SIZE);
+			process(file, readExifThumbnail);
+		} catch (EOFException e) {
+			// truncated file, size stays unknown
+		} finally {
+			StreamUtils.closeQuietly(in);
+			channel = null;
+			buffer = null;
+		}
+	}
+
+	private void process (FileHandle file, boolean readExifThumbnail) throws IOException {
+		if (u16be(0) == 0xFFD8) {
+			format = Format.JPEG;
+			processJpeg(readExifThumbnail);
+		} else if (u32be(0) == 0x89504E47L && u32be(4) == 0x0D0A1A0A) {
+			format = Format.PNG;
+			width = (int) u32be(16);
+			height = (int) u32be(20);
+		} else if (u8(0) == 'G' && u8(1) == 'I' && u8(2) == 'F' && u8(3) == '8') {
+			format = Format.GIF;
+			width = u16le(6);
+			height = u16le(8);
+		} else if (u8(0) == 'B' && u8(1) == 'M') {
+			format = Format.BMP;
+			if (u32le(14) == 12) { // OS/2 header
+				width = u16le(18);
+				height = u16le(20);
+			} else {
+				width = (int) u32le(18);
+				height = Math.abs((int) u32le(22)); // negative height means top-down bitmap
+			}
+		} else if (u32be(0) == 0x52494646 && u32be(8) == 0x57454250) { // RIFF, WEBP
+			processWebP();
+		} else if (file.extension().equalsIgnoreCase("tga")) {
+			processTga();
+		}
+	}
+
+	private void processJpeg (boolean readExifThumbnail) throws IOException {
+		long position = 2;
+		while (true) {
+			if (u8(position) != 0xFF) return;
+			while (u8(position) == 0xFF) position++; // fill bytes
+			int marker = u8(position++);
+
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) continue; // markers without length
+			if (marker == 0xD9 || marker == 0xDA) return; // end of image or start of scan before frame header
+
+			int length = u16be(position);
+			if (isStartOfFrame(marker)) {
+				height = u16be(position + 3);
+				width = u16be(position + 5);
+				return;
+			}
+
+			if (marker == 0xE1 && readExifThumbnail && exifThumbnail == null) {
+				exifThumbnail = ExifThumbnail.parse(bytes(position + 2, length - 2));
+			}
+
+			position += length;
+		}
+	}
+
+	private static boolean isStartOfFrame (int marker) {
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	private void processWebP () throws IOException {
+		long chunk = u32be(12);
+		if (chunk == 0x56503820) { // "VP8 ", lossy
+			if (u8(23) != 0x9D || u8(24) != 0x01 || u8(25) != 0x2A) return;
+			format = Format.WEBP;
+			width = u16le(26) & 0x3FFF;
+			height = u16le(28) & 0x3FFF;
+		} else if (chunk == 0x5650384C) { // "VP8L", lossless
+			if (u8(20) != 0x2F) return;
+			format = Format.WEBP;
+			long bits = u32le(21);
+			width = (int) (bits & 0x3FFF) + 1;
+			height = (int) ((bits >> 14) & 0x3FFF) + 1;
+		} else if (chunk == 0x56503858) { // "VP8X", extended
+			format = Format.WEBP;
+			width = (u8(24) | u8(25) << 8 | u8(26) << 16) + 1;
+			height = (u8(27) | u8(28) << 8 | u8(29) << 16) + 1;
+		}
+	}
+
+	/** TGA doesn't have magic number, fields are validated instead. */
+	private void processTga () throws IOException {
+		int colorMapType = u8(1);
+		int imageType = u8(2);
+		int depth = u8(16);
+		if (colorMapType > 1) return;
+		if (imageType != 1 && imageType != 2 && imageType != 3 && imageType != 9 && imageType != 10 && imageType != 11) return;
+		if (depth != 8 && depth != 15 && depth != 16 && depth != 24 && depth != 32) return;
+		format = Format.TGA;
+		width = u16le(12);
+		height = u16le(14);
+	}
+
+	/** Makes sure that given range of file is buffered, reads it from file if needed. */
+	private void ensure (long position, int length) throws IOException {
+		if (position >= bufferStart && position + length <= bufferStart + buffer.limit()) return;
+		fill(position, Math.max(PROBE_SIZE, length));
+		if (buffer.limit() < length) throw new EOFException();
+	}
+
+	private void fill (long position, int length) throws IOException {
+		if (buffer.capacity() < length) buffer = ByteBuffer.allocate(length);
+		buffer.clear();
+		buffer.limit(length);
+		bufferStart = position;
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1) break;
+		}
+		buffer.flip();
+	}
+
+	private int u8 (long position) throws IOException {
+		ensure(position, 1);
+		return buffer.get((int) (position - bufferStart)) & 0xFF;
+	}
+
+	private int u16be (long position) throws IOException {
+		return u8(position) << 8 | u8(position + 1);
+	}
+
+	private int u16le (long position) throws IOException {
+		return u8(position) | u8(position + 1) << 8;
+	}
+
+	private long u32be (long position) throws IOException {
+		return (long) u16be(position) << 16 | u16be(position + 2);
+	}
+
+	private long u32le (long position) throws IOException {
+		return u16le(position) | (long) u16le(position + 2) << 16;
+	}
+
+	private byte[] bytes (long position, int length) throws IOException {
+		if (length < 0) throw new EOFException();
+		ensure(position, length);
+		byte[] bytes = new byte[length];
+		ByteBuffer source = buffer.duplicate();
+		source.position((int) (position - bufferStart));
+		source.get(bytes);
+		return bytes;
+	}
+
+	public Format getFormat () {
+		return format;
+	}
+
+	/** @return image width or -1 if unknown */
+	public int getWidth () {
+		return width;
+	}
+
+	/** @return image height or -1 if unknown */
+	public int getHeight () {
+		return height;
+	}
+
+	/** @return bytes of JPEG thumbnail embedded in EXIF segment or null if file doesn't have one or it wasn't requested */
+	public byte[] getExifThumbnail () {
+		return exifThumbnail;
+	}
+}
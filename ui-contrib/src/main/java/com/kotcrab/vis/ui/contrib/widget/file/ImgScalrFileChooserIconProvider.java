@@ -16,24 +16,24 @@
 
 package com.kotcrab.vis.ui.contrib.widget.file;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.Scaling;
-import com.badlogic.gdx.utils.StreamUtils;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.kotcrab.vis.ui.widget.file.FileChooser;
 import com.kotcrab.vis.ui.widget.file.FileChooser.FileIconProvider;
 import org.imgscalr.Scalr;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
-import java.io.FileInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.Comparator;
+import java.util.Iterator;
 
 /**
  * {@link FileIconProvider} implementation supporting displaying real files thumbnails. Imgscalr is used to create
@@ -45,55 +45,133 @@ import java.io.InputStream;
  * <p>
  * Warning: Test showed that most JVM can't handle CMYK JPGs correctly, such JPGs will have wrong colors in thumbnail preview.
  * For proper support for such JPGs different ImageIO JPG reader must be used for example CMYKJPEGImageReader from Monte
- * Media Library. You can override {@link #readImage(FileHandle)} to plug such reader in.
+ * Media Library. Such reader is used automatically when it's registered as ImageIO plugin. Alternatively you can
+ * override {@link #readImage(FileHandle, int)} to plug such reader in. Overriding {@link #readImage(FileHandle)} is still
+ * supported but then all images are decoded by it at full size, without source subsampling.
  * @author Kotcrab
  * @see HighResFileChooserIconProvider
  */
 public class ImgScalrFileChooserIconProvider extends CachingFileChooserIconProvider {
-	private static final Color tmpColor = new Color();
-	private static final int MAX_IMAGE_WIDTH = 8192;
-	private static final int MAX_IMAGE_HEIGHT = 8192;
+	/** Subsampled image is decoded at least this many times larger than thumbnail, so scaling can smooth out aliasing. */
+	private static final int SUBSAMPLING_HEADROOM = 2;
+
+	private boolean useEmbeddedThumbnails = true;
+	/** True if subclass overrides {@link #readImage(FileHandle)}, then it's used for all images. */
+	private final boolean customReader = overridesReadImage();
+	private final Comparator<FileChooser.ViewMode> largestFirst = new Comparator<FileChooser.ViewMode>() {
+		@Override
+		public int compare (FileChooser.ViewMode mode1, FileChooser.ViewMode mode2) {
+			return Float.compare(mode2.getGridSize(chooser.getSizes()), mode1.getGridSize(chooser.getSizes()));
+		}
+	};
 
 	public ImgScalrFileChooserIconProvider (FileChooser chooser) {
 		super(chooser);
 		System.setProperty("java.awt.headless", "true");
 	}
 
+	/**
+	 * @param threads amount of worker threads used for thumbnail generation, every thread may decode one subsampled image
+	 * at the same time so heap usage grows with thread count
+	 */
+	public ImgScalrFileChooserIconProvider (FileChooser chooser, int threads) {
+		super(chooser, threads);
+		System.setProperty("java.awt.headless", "true");
+	}
+
 	@Override
 	protected void scheduleThumbnailGeneration (final Thumbnail thumbnail, final FileChooser.ViewMode viewMode, final float thumbSize, final FileChooser.FileItem item) {
-		executor.execute(new Runnable() {
+		final int generation = getGeneration();
+		final Array<FileChooser.ViewMode> viewModes = getMissingViewModes(thumbnail, viewMode);
+		final IntArray sizes = new IntArray(viewModes.size);
+		for (FileChooser.ViewMode mode : viewModes) {
+			sizes.add((int) mode.getGridSize(chooser.getSizes()));
+		}
+
+		execute(item, new Runnable() {
 			@Override
 			public void run () {
 				try {
 					FileHandle file = item.getFile();
-					ImgScalrFileChooserIconProvider.ImageInfo imageInfo = new ImgScalrFileChooserIconProvider.ImageInfo(file);
-					if (imageInfo.width > MAX_IMAGE_WIDTH || imageInfo.height > MAX_IMAGE_HEIGHT)
-						return;
+					ThumbnailDiskCache diskCache = getDiskCache();
+					if (diskCache != null) {
+						Pixmap cached = diskCache.read(file, viewMode, (int) thumbSize);
+						recordDiskCacheLookup(file, viewMode, cached != null);
+						if (cached != null) {
+							queueUpload(thumbnail, viewMode, item, cached);
+							return;
+						}
+					}
 
-					if (imageInfo.width < thumbSize || imageInfo.height < thumbSize) {
-						updateItemImageFromFile(thumbnail, viewMode, item);
+					long start = TimeUtils.nanoTime();
+					ImageInfo imageInfo = new ImageInfo(file, useEmbeddedThumbnails);
+					recordHeaderProbe(file, TimeUtils.timeSinceNanos(start));
+					// image fitting into thumbnail is used directly, image with only one small side (e.g. sprite strip) is scaled
+					boolean small = imageInfo.getWidth() <= thumbSize && imageInfo.getHeight() <= thumbSize;
+					if (small && (imageInfo.getFormat().isPixmapSupported() || imageInfo.getFormat() == ImageInfo.Format.UNKNOWN)) {
+						start = TimeUtils.nanoTime();
+						Pixmap pixmap = new Pixmap(file);
+						recordDecode(file, TimeUtils.timeSinceNanos(start));
+						queueUpload(thumbnail, viewMode, item, pixmap);
 						return;
 					}
 
-					final BufferedImage imageFile = readImage(file);
-					final BufferedImage scaledImg = Scalr.resize(imageFile, Scalr.Method.BALANCED, Scalr.Mode.AUTOMATIC, (int) thumbSize);
+					if (isCancelled(generation)) return;
+					int maxSize = sizes.get(0);
+					start = TimeUtils.nanoTime();
+					BufferedImage imageFile = null;
+					if (imageInfo.getExifThumbnail() != null) imageFile = readEmbeddedThumbnail(imageInfo.getExifThumbnail(), (int) thumbSize);
+					if (imageFile == null) imageFile = customReader ? readImage(file) : readImage(file, maxSize);
+					if (imageFile == null && (imageInfo.getFormat().isPixmapSupported() || imageInfo.getFormat() == ImageInfo.Format.UNKNOWN)) {
+						imageFile = readPixmapImage(file); // no ImageIO reader, e.g. TGA
+					}
+					if (imageFile == null) throw new IOException("Unsupported image format: " + file.path());
+					recordDecode(file, TimeUtils.timeSinceNanos(start));
+					int sourceSize = Math.max(imageFile.getWidth(), imageFile.getHeight());
+
+					// successive downscales from largest thumbnail, like mipmap chain
+					BufferedImage scaledImg = imageFile;
+					for (int i = 0; i < viewModes.size; i++) {
+						FileChooser.ViewMode mode = viewModes.get(i);
+						int size = sizes.get(i);
+						if (size > sourceSize && mode != viewMode) continue; // source too small, e.g. embedded thumbnail
+						start = TimeUtils.nanoTime();
+						scaledImg = Scalr.resize(scaledImg, Scalr.Method.BALANCED, Scalr.Mode.AUTOMATIC, size);
+						Pixmap pixmap = imageToPixmap(scaledImg);
+						recordScale(file, mode, TimeUtils.timeSinceNanos(start));
 
-					FileHandle tmpThumbFile = null;
-					if (scaledImg.getType() != BufferedImage.TYPE_INT_RGB && scaledImg.getType() != BufferedImage.TYPE_INT_ARGB) {
-						tmpThumbFile = FileHandle.tempFile("filechooser");
-						ImageIO.write(scaledImg, "png", tmpThumbFile.file());
+						if (diskCache != null) {
+							try {
+								diskCache.write(file, mode, size, pixmap);
+							} catch (IOException e) {
+								reportFailure(file, e); // thumbnail is still usable, only caching failed
+							}
+						}
+						queueUpload(thumbnail, mode, item, pixmap);
 					}
-					updateItemImageFromScaled(thumbnail, viewMode, item, scaledImg, tmpThumbFile);
 				} catch (Exception e) {
-					e.printStackTrace();
+					reportFailure(item.getFile(), e);
 				}
 			}
 		});
 	}
 
+	/** @return thumbnail view modes that don't have thumbnail yet including current one, sorted from largest */
+	private Array<FileChooser.ViewMode> getMissingViewModes (Thumbnail thumbnail, FileChooser.ViewMode viewMode) {
+		Array<FileChooser.ViewMode> viewModes = new Array<FileChooser.ViewMode>(3);
+		for (FileChooser.ViewMode mode : FileChooser.ViewMode.values()) {
+			if (mode.isThumbnailMode() && (mode == viewMode || thumbnail.getThumbnail(mode) == null))
+				viewModes.add(mode);
+		}
+		viewModes.sort(largestFirst);
+		return viewModes;
+	}
+
 	/**
-	 * Reads image from file into BufferedImage. Override this if you want to add support for CMYK JPGs or want to provide
-	 * non standard image loading method. For example via AWT Toolkit.
+	 * Reads image from file into BufferedImage. Used when no ImageIO reader can decode file. If this method is overridden
+	 * it is used for all images instead of {@link #readImage(FileHandle, int)}, which keeps existing subclasses providing
+	 * non standard image loading method working. Prefer overriding {@link #readImage(FileHandle, int)} or registering your
+	 * reader as ImageIO plugin, so large images can be decoded with subsampling.
 	 * @param file image file
 	 * @return buffered image read from file
 	 */
@@ -101,155 +179,97 @@ public class ImgScalrFileChooserIconProvider extends CachingFileChooserIconProvi
 		return ImageIO.read(file.file());
 	}
 
-	private void updateItemImageFromScaled (final Thumbnail thumbnail, final FileChooser.ViewMode viewMode,
-											final FileChooser.FileItem item, final BufferedImage scaledImg, final FileHandle thumbFile) {
-		Gdx.app.postRunnable(new Runnable() {
-			@Override
-			public void run () {
-				try {
-					Texture texture;
-					if (thumbFile == null) {
-						Pixmap pixmap = imageToPixmap(scaledImg);
-						texture = new Texture(pixmap);
-						pixmap.dispose();
-					} else {
-						texture = new Texture(thumbFile);
-					}
+	/**
+	 * Reads image from file for creating thumbnail of given size. Large images are decoded with source subsampling so only
+	 * every n-th pixel is stored, which keeps heap usage and scaling time proportional to thumbnail size instead of source
+	 * image size. Override this if you want to add support for CMYK JPGs or want to provide non standard image loading
+	 * method, for example via AWT Toolkit. Not used if {@link #readImage(FileHandle)} is overridden.
+	 * @param file image file
+	 * @param thumbSize size of thumbnail that will be created from returned image
+	 * @return buffered image read from file, may be smaller than source image
+	 */
+	protected BufferedImage readImage (FileHandle file, int thumbSize) throws IOException {
+		ImageInputStream stream = ImageIO.createImageInputStream(file.file());
+		if (stream == null) return readImage(file);
 
-					thumbnail.addThumb(viewMode, texture);
-					item.setIcon(thumbnail.getThumbnail(viewMode), Scaling.fit);
-				} catch (GdxRuntimeException e) {
-					e.printStackTrace();
-				}
-			}
-		});
-	}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (readers.hasNext() == false) return readImage(file);
 
-	private void updateItemImageFromFile (final Thumbnail thumbnail, final FileChooser.ViewMode viewMode,
-										  final FileChooser.FileItem item) {
-		Gdx.app.postRunnable(new Runnable() {
-			@Override
-			public void run () {
-				try {
-					Texture texture = new Texture(item.getFile());
-					thumbnail.addThumb(viewMode, texture);
-					item.setIcon(thumbnail.getThumbnail(viewMode), Scaling.fit);
-				} catch (GdxRuntimeException e) {
-					e.printStackTrace();
-				}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				ImageReadParam param = reader.getDefaultReadParam();
+				int subsampling = getSubsampling(reader.getWidth(0), reader.getHeight(0), thumbSize);
+				if (subsampling > 1) param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
 			}
-		});
+		} finally {
+			stream.close();
+		}
 	}
 
-	public Pixmap imageToPixmap (BufferedImage image) {
-		final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
-		final int width = image.getWidth();
-		final int height = image.getHeight();
-		final boolean hasAlphaChannel = image.getAlphaRaster() != null;
-
-		Pixmap pixmap = new Pixmap(width, height, hasAlphaChannel ? Pixmap.Format.RGBA8888 : Pixmap.Format.RGB888);
-
-		if (hasAlphaChannel) {
-			for (int pixel = 0, row = 0, col = 0; pixel < pixels.length; pixel++) {
-
-				Color.argb8888ToColor(tmpColor, pixels[pixel]);
-				pixmap.drawPixel(col, row, Color.rgba8888(tmpColor));
-
-				col++;
-				if (col == width) {
-					col = 0;
-					row++;
-				}
-			}
-		} else {
-			for (int pixel = 0, row = 0, col = 0; pixel < pixels.length; pixel++) {
-				int color = pixels[pixel];
-				tmpColor.r = ((color & 0x00ff0000) >>> 16) / 255f;
-				tmpColor.g = ((color & 0x0000ff00) >>> 8) / 255f;
-				tmpColor.b = ((color & 0x000000ff)) / 255f;
-				tmpColor.a = 1f;
-
-				pixmap.drawPixel(col, row, Color.rgba8888(tmpColor));
-
-				col++;
-				if (col == width) {
-					col = 0;
-					row++;
-				}
-			}
+	/** Reads image using libGDX {@link Pixmap}, used for formats that ImageIO can't decode. Doesn't use subsampling. */
+	private BufferedImage readPixmapImage (FileHandle file) {
+		Pixmap pixmap = new Pixmap(file);
+		try {
+			return PixmapConverter.toImage(pixmap);
+		} finally {
+			pixmap.dispose();
 		}
-
-		return pixmap;
 	}
 
-	@Override
-	public void dispose () {
-		super.dispose();
+	/**
+	 * Decodes thumbnail embedded in EXIF metadata of JPEG file, most cameras store such thumbnail in photos they take.
+	 * @param data embedded JPEG thumbnail
+	 * @param thumbSize size of thumbnail that will be created from returned image
+	 * @return embedded thumbnail or null if it can't be decoded or it is smaller than thumbnail size
+	 */
+	protected BufferedImage readEmbeddedThumbnail (byte[] data, int thumbSize) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+		if (image == null || Math.max(image.getWidth(), image.getHeight()) < thumbSize) return null;
+		return image;
 	}
 
-	private static class ImageInfo {
-		private int height;
-		private int width;
+	/**
+	 * Embedded thumbnails are much faster to read than full images, however some cameras add black bars to them to
+	 * keep 4:3 aspect ratio.
+	 * @param useEmbeddedThumbnails if true thumbnails embedded in JPEG EXIF metadata are used when they are at least as
+	 * large as requested thumbnail size. Default is true.
+	 */
+	public void setUseEmbeddedThumbnails (boolean useEmbeddedThumbnails) {
+		this.useEmbeddedThumbnails = useEmbeddedThumbnails;
+	}
 
-		public ImageInfo (FileHandle file) {
-			process(file);
-		}
+	public boolean isUseEmbeddedThumbnails () {
+		return useEmbeddedThumbnails;
+	}
 
-		public void process (FileHandle file) {
-			width = -1;
-			height = -1;
-			InputStream is = null;
+	private boolean overridesReadImage () {
+		for (Class<?> type = getClass(); type != ImgScalrFileChooserIconProvider.class; type = type.getSuperclass()) {
 			try {
-				is = new FileInputStream(file.file());
-				processStream(is);
-			} catch (IOException e) {
-				e.printStackTrace();
-			} finally {
-				StreamUtils.closeQuietly(is);
+				type.getDeclaredMethod("readImage", FileHandle.class);
+				return true;
+			} catch (NoSuchMethodException ignored) {
 			}
 		}
+		return false;
+	}
 
-		private void processStream (InputStream is) throws IOException {
-			int c1 = is.read();
-			int c2 = is.read();
-			int c3 = is.read();
-
-			if (c1 == 0xFF && c2 == 0xD8) { // JPG
-				while (c3 == 255) {
-					int marker = is.read();
-					int len = readInt(is, 2, true);
-					if (marker == 192 || marker == 193 || marker == 194) {
-						is.skip(1);
-						height = readInt(is, 2, true);
-						width = readInt(is, 2, true);
-						break;
-					}
-					is.skip(len - 2);
-					c3 = is.read();
-				}
-			} else if (c1 == 137 && c2 == 80 && c3 == 78) { // PNG
-				is.skip(15);
-				width = readInt(is, 2, true);
-				is.skip(2);
-				height = readInt(is, 2, true);
-			} else if (c1 == 66 && c2 == 77) { // BMP
-				is.skip(15);
-				width = readInt(is, 2, false);
-				is.skip(2);
-				height = readInt(is, 2, false);
-			}
+	/** @return largest subsampling factor that keeps longer side of image at least {@link #SUBSAMPLING_HEADROOM} times larger than thumbnail */
+	private static int getSubsampling (int width, int height, int thumbSize) {
+		return Math.max(1, Math.max(width, height) / (thumbSize * SUBSAMPLING_HEADROOM));
+	}
 
-		}
+	/** Converts image of any type to pixmap. Can be called from any thread. */
+	public Pixmap imageToPixmap (BufferedImage image) {
+		return PixmapConverter.fromImage(image);
+	}
 
-		private int readInt (InputStream is, int noOfBytes, boolean bigEndian) throws IOException {
-			int ret = 0;
-			int sv = bigEndian ? ((noOfBytes - 1) * 8) : 0;
-			int cnt = bigEndian ? -8 : 8;
-			for (int i = 0; i < noOfBytes; i++) {
-				ret |= is.read() << sv;
-				sv += cnt;
-			}
-			return ret;
-		}
+	@Override
+	public void dispose () {
+		super.dispose();
 	}
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+
+import java.awt.color.ColorSpace;
+import java.awt.image.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts {@link BufferedImage} into {@link Pixmap} by copying raster rows directly into pixmap buffer and back. Integer and
+ * byte interleaved rasters are copied directly, other image types (indexed, premultiplied, 16 bit etc.) are converted
+ * row by row using {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}. Doesn't require GL context so it
+ * can be used from worker threads.
+ * @author Kotcrab
+ */
+public class PixmapConverter {
+	private PixmapConverter () {
+	}
+
+	/**
+	 * Converts image of any type.
+	 * @return RGBA8888 pixmap if image has alpha channel, RGB888 otherwise. Caller is responsible for disposing it.
+	 */
+	public static Pixmap fromImage (BufferedImage image) {
+		int type = image.getType();
+		if (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) return fromIntImage(image);
+		if (isInterleavedByteImage(image)) return fromInterleavedByteImage(image);
+		return fromGenericImage(image);
+	}
+
+	/**
+	 * Converts image with {@link BufferedImage#TYPE_INT_RGB} or {@link BufferedImage#TYPE_INT_ARGB} type.
+	 * @return RGBA8888 pixmap if image has alpha channel, RGB888 otherwise. Caller is responsible for disposing it.
+	 */
+	public static Pixmap fromIntImage (BufferedImage image) {
+		int type = image.getType();
+		if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+			throw new GdxRuntimeException("Unsupported image type: " + type);
+
+		WritableRaster raster = image.getRaster();
+		DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+		int[] data = dataBuffer.getData();
+		int scanlineStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		int offset = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride - raster.getSampleModelTranslateX();
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean hasAlpha = type == BufferedImage.TYPE_INT_ARGB;
+		Pixmap pixmap = new Pixmap(width, height, hasAlpha ? Pixmap.Format.RGBA8888 : Pixmap.Format.RGB888);
+
+		ByteBuffer pixels = pixmap.getPixels();
+		pixels.position(0);
+		byte[] row = new byte[width * (hasAlpha ? 4 : 3)];
+
+		for (int y = 0; y < height; y++) {
+			int index = offset + y * scanlineStride;
+			int i = 0;
+			if (hasAlpha) {
+				for (int x = 0; x < width; x++) {
+					int argb = data[index + x];
+					row[i++] = (byte) (argb >>> 16);
+					row[i++] = (byte) (argb >>> 8);
+					row[i++] = (byte) argb;
+					row[i++] = (byte) (argb >>> 24);
+				}
+			} else {
+				for (int x = 0; x < width; x++) {
+					int rgb = data[index + x];
+					row[i++] = (byte) (rgb >>> 16);
+					row[i++] = (byte) (rgb >>> 8);
+					row[i++] = (byte) rgb;
+				}
+			}
+			pixels.put(row);
+		}
+
+		pixels.position(0);
+		return pixmap;
+	}
+
+	/**
+	 * Converts pixmap of any format into image, used for formats that can be decoded by pixmap but not by ImageIO.
+	 * @return {@link BufferedImage#TYPE_INT_ARGB} image if pixmap has alpha channel, {@link BufferedImage#TYPE_INT_RGB}
+	 * otherwise
+	 */
+	public static BufferedImage toImage (Pixmap pixmap) {
+		int width = pixmap.getWidth();
+		int height = pixmap.getHeight();
+		Pixmap.Format format = pixmap.getFormat();
+		boolean hasAlpha = format != Pixmap.Format.RGB888 && format != Pixmap.Format.RGB565;
+		BufferedImage image = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+		if (format == Pixmap.Format.RGBA8888 || format == Pixmap.Format.RGB888) {
+			ByteBuffer pixels = pixmap.getPixels();
+			pixels.position(0);
+			byte[] row = new byte[width * (hasAlpha ? 4 : 3)];
+			for (int y = 0, index = 0; y < height; y++) {
+				pixels.get(row);
+				for (int i = 0; i < row.length; ) {
+					int rgb = (row[i++] & 0xff) << 16 | (row[i++] & 0xff) << 8 | row[i++] & 0xff;
+					data[index++] = hasAlpha ? (row[i++] & 0xff) << 24 | rgb : rgb;
+				}
+			}
+			pixels.position(0);
+		} else {
+			for (int y = 0, index = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					int rgba = pixmap.getPixel(x, y);
+					data[index++] = rgba << 24 | rgba >>> 8;
+				}
+			}
+		}
+
+		return image;
+	}
+
+	private static boolean isInterleavedByteImage (BufferedImage image) {
+		ColorModel colorModel = image.getColorModel();
+		SampleModel sampleModel = image.getSampleModel();
+		if (colorModel instanceof ComponentColorModel == false || colorModel.isAlphaPremultiplied()) return false;
+		if (sampleModel instanceof PixelInterleavedSampleModel == false) return false;
+		if (image.getRaster().getDataBuffer() instanceof DataBufferByte == false) return false;
+
+		int bands = sampleModel.getNumBands();
+		int colorSpace = colorModel.getColorSpace().getType();
+		if (bands == 1) return colorSpace == ColorSpace.TYPE_GRAY;
+		return (bands == 3 || bands == 4) && colorSpace == ColorSpace.TYPE_RGB && colorModel.getNumComponents() == bands;
+	}
+
+	/** Converts 8 bit gray, RGB and RGBA rasters with any band order, for example {@link BufferedImage#TYPE_3BYTE_BGR}. */
+	private static Pixmap fromInterleavedByteImage (BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		PixelInterleavedSampleModel sampleModel = (PixelInterleavedSampleModel) raster.getSampleModel();
+		DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+		byte[] data = dataBuffer.getData();
+		int pixelStride = sampleModel.getPixelStride();
+		int scanlineStride = sampleModel.getScanlineStride();
+		int[] bandOffsets = sampleModel.getBandOffsets();
+		int offset = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+				- raster.getSampleModelTranslateX() * pixelStride;
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean gray = bandOffsets.length == 1;
+		boolean hasAlpha = bandOffsets.length == 4;
+		int r = bandOffsets[0];
+		int g = gray ? r : bandOffsets[1];
+		int b = gray ? r : bandOffsets[2];
+		int a = hasAlpha ? bandOffsets[3] : 0;
+		Pixmap pixmap = new Pixmap(width, height, hasAlpha ? Pixmap.Format.RGBA8888 : Pixmap.Format.RGB888);
+
+		ByteBuffer pixels = pixmap.getPixels();
+		pixels.position(0);
+		byte[] row = new byte[width * (hasAlpha ? 4 : 3)];
+
+		for (int y = 0; y < height; y++) {
+			int index = offset + y * scanlineStride;
+			int i = 0;
+			for (int x = 0; x < width; x++, index += pixelStride) {
+				row[i++] = data[index + r];
+				row[i++] = data[index + g];
+				row[i++] = data[index + b];
+				if (hasAlpha) row[i++] = data[index + a];
+			}
+			pixels.put(row);
+		}
+
+		pixels.position(0);
+		return pixmap;
+	}
+
+	private static Pixmap fromGenericImage (BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean hasAlpha = image.getColorModel().hasAlpha();
+		Pixmap pixmap = new Pixmap(width, height, hasAlpha ? Pixmap.Format.RGBA8888 : Pixmap.Format.RGB888);
+
+		ByteBuffer pixels = pixmap.getPixels();
+		pixels.position(0);
+		int[] argbRow = new int[width];
+		byte[] row = new byte[width * (hasAlpha ? 4 : 3)];
+
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, argbRow, 0, width);
+			int i = 0;
+			for (int x = 0; x < width; x++) {
+				int argb = argbRow[x];
+				row[i++] = (byte) (argb >>> 16);
+				row[i++] = (byte) (argb >>> 8);
+				row[i++] = (byte) argb;
+				if (hasAlpha) row[i++] = (byte) (argb >>> 24);
+			}
+			pixels.put(row);
+		}
+
+		pixels.position(0);
+		return pixmap;
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Runtime atlas used by {@link CachingFileChooserIconProvider} to store thumbnails in shared textures, so grid of
+ * thumbnails can be rendered using few draw calls. Thumbnails are packed into shelves, rows of thumbnails with similar
+ * height, and occupy exactly their size plus padding. Space of removed thumbnails is reused, page is disposed once it's
+ * empty. All methods must be called from GL thread.
+ * @author Kotcrab
+ */
+public class ThumbnailAtlas implements Disposable {
+	private static final int PADDING = 1;
+	/** Pages are enlarged up to this size so large thumbnails don't need many pages. */
+	private static final int MAX_PAGE_SIZE = 2048;
+	private static final int MIN_ITEMS_PER_ROW = 8;
+
+	private final int pageSize;
+	private final Array<Page> pages = new Array<Page>();
+
+	/**
+	 * @param pageSize width and height of atlas page textures, pages for large thumbnails are enlarged up to 2048 so
+	 * more thumbnails fit into single page
+	 */
+	public ThumbnailAtlas (int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Uploads pixmap to atlas. Pixmap is not disposed. Pixmap larger than page gets texture of its own, it must not be
+	 * larger than maximum texture size.
+	 * @return region of atlas page containing pixmap, must be released using {@link #free(ThumbnailRegion)}
+	 */
+	public ThumbnailRegion add (Pixmap pixmap) {
+		int width = pixmap.getWidth() + PADDING * 2;
+		int height = pixmap.getHeight() + PADDING * 2;
+
+		for (Page page : pages) {
+			ThumbnailRegion region = page.add(pixmap, width, height);
+			if (region != null) return region;
+		}
+
+		int size = getPageSize(Math.max(width, height));
+		Page page;
+		if (width > size || height > size)
+			page = new Page(width, height); // too large for page, gets texture of its own size
+		else
+			page = new Page(size, size);
+		pages.add(page);
+		return page.add(pixmap, width, height);
+	}
+
+	private int getPageSize (int size) {
+		int pageSize = this.pageSize;
+		while (pageSize < MAX_PAGE_SIZE && pageSize < size * MIN_ITEMS_PER_ROW) pageSize *= 2;
+		return pageSize;
+	}
+
+	/** Releases region, after this call region must not be used for rendering. */
+	public void free (ThumbnailRegion region) {
+		Page page = region.page;
+		if (page == null) return;
+		region.page = null;
+		page.free(region);
+
+		if (page.used == 0) {
+			pages.removeValue(page, true);
+			page.texture.dispose();
+		}
+	}
+
+	/** @return amount of atlas page textures currently allocated */
+	public int getPageCount () {
+		return pages.size;
+	}
+
+	/** @return amount of texture memory in bytes used by all atlas pages */
+	public long getTextureBytes () {
+		long bytes = 0;
+		for (Page page : pages) {
+			bytes += (long) page.texture.getWidth() * page.texture.getHeight() * 4;
+		}
+		return bytes;
+	}
+
+	public int getPageSize () {
+		return pageSize;
+	}
+
+	@Override
+	public void dispose () {
+		for (Page page : pages) {
+			page.texture.dispose();
+		}
+		pages.clear();
+	}
+
+	/** Part of atlas page holding single thumbnail. */
+	public static class ThumbnailRegion extends TextureRegion {
+		private Page page;
+		private final Shelf shelf;
+		private final int slotX;
+		private final int slotWidth;
+		private final int slotHeight;
+
+		private ThumbnailRegion (Page page, Shelf shelf, int slotX, int slotWidth, int slotHeight, int width, int height) {
+			super(page.texture, slotX + PADDING, shelf.y + PADDING, width, height);
+			this.page = page;
+			this.shelf = shelf;
+			this.slotX = slotX;
+			this.slotWidth = slotWidth;
+			this.slotHeight = slotHeight;
+		}
+
+		/** @return amount of texture memory in bytes occupied by this region, including padding */
+		public long getBytes () {
+			return (long) slotWidth * slotHeight * 4;
+		}
+	}
+
+	private static class Page {
+		private final int width;
+		private final int height;
+		private final Texture texture;
+		/** Ordered from top of page. */
+		private final Array<Shelf> shelves = new Array<Shelf>();
+		private int used;
+
+		public Page (int width, int height) {
+			this.width = width;
+			this.height = height;
+			texture = new Texture(width, height, Pixmap.Format.RGBA8888);
+		}
+
+		/** @return region or null if pixmap doesn't fit into this page */
+		public ThumbnailRegion add (Pixmap pixmap, int width, int height) {
+			if (width > this.width) return null;
+
+			// shelf with lowest height that still fits, so tall shelves are not filled with short thumbnails
+			Shelf bestShelf = null;
+			int bestX = -1;
+			for (Shelf shelf : shelves) {
+				if (shelf.fits(height) == false || (bestShelf != null && shelf.height >= bestShelf.height)) continue;
+				int x = shelf.findSlot(width, this.width);
+				if (x != -1) {
+					bestShelf = shelf;
+					bestX = x;
+				}
+			}
+
+			if (bestShelf == null) {
+				int top = shelves.size == 0 ? 0 : shelves.peek().y + shelves.peek().height;
+				if (top + height > this.height) return null;
+				bestShelf = new Shelf(top, height);
+				shelves.add(bestShelf);
+				bestX = bestShelf.findSlot(width, this.width);
+			}
+
+			bestShelf.take(bestX, width);
+			used++;
+
+			Gdx.gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+			texture.draw(pixmap, bestX + PADDING, bestShelf.y + PADDING);
+			return new ThumbnailRegion(this, bestShelf, bestX, width, height, pixmap.getWidth(), pixmap.getHeight());
+		}
+
+		public void free (ThumbnailRegion region) {
+			region.shelf.release(region.slotX, region.slotWidth);
+			used--;
+
+			// trailing empty shelves are removed so their space can be used by shelves of different height
+			while (shelves.size > 0 && shelves.peek().used == 0) shelves.pop();
+		}
+	}
+
+	/** Row of thumbnails, thumbnail is placed into shelf if its height is not much lower than height of shelf. */
+	private static class Shelf {
+		private final int y;
+		private final int height;
+		/** Free spans left by removed thumbnails, start and width pairs. */
+		private final IntArray freeSlots = new IntArray();
+		private int nextX;
+		private int used;
+
+		public Shelf (int y, int height) {
+			this.y = y;
+			this.height = height;
+		}
+
+		public boolean fits (int height) {
+			if (height > this.height) return false;
+			return used == 0 || height >= this.height * 3 / 4;
+		}
+
+		/** @return x of free span that fits given width or -1 if there is no such span */
+		public int findSlot (int width, int pageWidth) {
+			for (int i = 0; i < freeSlots.size; i += 2) {
+				if (freeSlots.get(i + 1) >= width) return freeSlots.get(i);
+			}
+			return nextX + width <= pageWidth ? nextX : -1;
+		}
+
+		public void take (int x, int width) {
+			used++;
+			if (x == nextX) {
+				nextX += width;
+				return;
+			}
+			for (int i = 0; i < freeSlots.size; i += 2) {
+				if (freeSlots.get(i) != x) continue;
+				int remaining = freeSlots.get(i + 1) - width;
+				if (remaining > 0) {
+					freeSlots.set(i, x + width);
+					freeSlots.set(i + 1, remaining);
+				} else
+					freeSlots.removeRange(i, i + 1);
+				return;
+			}
+		}
+
+		public void release (int x, int width) {
+			used--;
+			if (used == 0) {
+				freeSlots.clear();
+				nextX = 0;
+				return;
+			}
+
+			if (x + width != nextX) {
+				freeSlots.add(x);
+				freeSlots.add(width);
+				return;
+			}
+
+			// span at end of shelf, merge it with free spans preceding it
+			nextX = x;
+			for (int i = 0; i < freeSlots.size; i += 2) {
+				if (freeSlots.get(i) + freeSlots.get(i + 1) != nextX) continue;
+				nextX = freeSlots.get(i);
+				freeSlots.removeRange(i, i + 1);
+				i = -2;
+			}
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxRuntimeException;
+import com.badlogic.gdx.utils.StreamUtils;
+import com.kotcrab.vis.ui.widget.file.FileChooser;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent thumbnail store used by {@link CachingFileChooserIconProvider}. Every thumbnail is stored in separate file
+ * named by hash of source file path, view mode and thumbnail size. Entry header contains source file length and last
+ * modification time, when source file changes entry is discarded on next read. Thumbnails without alpha channel are
+ * stored as JPEG which takes few KB per thumbnail, others are stored deflated. Reading cached thumbnail doesn't require
+ * decoding source image. Cache size is limited, least recently used entries are deleted when limit is exceeded, see
+ * {@link #setMaxSize(long)}. Methods can be called from any thread.
+ * @author Kotcrab
+ */
+public class ThumbnailDiskCache {
+	private static final int MAGIC = 0x56495354;
+	private static final int VERSION = 2;
+	private static final byte ENCODING_DEFLATE = 0;
+	private static final byte ENCODING_JPEG = 1;
+	/** Pruning deletes entries until cache is this fraction of max size, so it doesn't have to run on every write. */
+	private static final float PRUNE_RATIO = 0.9f;
+
+	private final FileHandle directory;
+	private final AtomicLong cacheSize = new AtomicLong();
+	private volatile long maxSize = 64 * 1024 * 1024;
+	private volatile float jpegQuality = 0.9f;
+
+	/** @param directory directory where thumbnails will be stored, for example `~/.cache/your-app/thumbnails` */
+	public ThumbnailDiskCache (FileHandle directory) {
+		this.directory = directory;
+		directory.mkdirs();
+		prune();
+	}
+
+	/**
+	 * @return cached thumbnail pixmap or null if thumbnail isn't cached or source file was changed since it was cached.
+	 * Caller is responsible for disposing returned pixmap.
+	 */
+	public Pixmap read (FileHandle file, FileChooser.ViewMode viewMode, int size) {
+		FileHandle entry = getEntry(file, viewMode, size);
+		if (entry.exists() == false) return null;
+
+		DataInputStream in = null;
+		Pixmap pixmap = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(entry.read()));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| in.readUTF().equals(file.path()) == false || in.readLong() != file.length()
+					|| in.readLong() != file.lastModified() || in.readInt() != size) {
+				StreamUtils.closeQuietly(in);
+				delete(entry);
+				return null;
+			}
+
+			int width = in.readInt();
+			int height = in.readInt();
+			Pixmap.Format format = Pixmap.Format.valueOf(in.readUTF());
+			if (in.readByte() == ENCODING_JPEG) {
+				pixmap = readJpeg(in, width, height);
+			} else {
+				pixmap = new Pixmap(width, height, format);
+				readDeflated(in, pixmap);
+			}
+			entry.file().setLastModified(System.currentTimeMillis()); // least recently used entries are pruned first
+			return pixmap;
+		} catch (IOException e) {
+			if (pixmap != null) pixmap.dispose();
+			StreamUtils.closeQuietly(in);
+			delete(entry);
+			return null;
+		} catch (IllegalArgumentException e) {
+			if (pixmap != null) pixmap.dispose();
+			StreamUtils.closeQuietly(in);
+			delete(entry);
+			return null;
+		} finally {
+			StreamUtils.closeQuietly(in);
+		}
+	}
+
+	private static Pixmap readJpeg (InputStream in, int width, int height) throws IOException {
+		BufferedImage image = ImageIO.read(new MemoryCacheImageInputStream(in));
+		if (image == null || image.getWidth() != width || image.getHeight() != height)
+			throw new IOException("Invalid JPEG thumbnail");
+		return PixmapConverter.fromImage(image);
+	}
+
+	private static void readDeflated (InputStream in, Pixmap pixmap) throws IOException {
+		ByteBuffer pixels = pixmap.getPixels();
+		pixels.position(0);
+		DataInputStream pixelsIn = new DataInputStream(new InflaterInputStream(in));
+		byte[] buffer = new byte[8192];
+		while (pixels.hasRemaining()) {
+			int length = Math.min(buffer.length, pixels.remaining());
+			pixelsIn.readFully(buffer, 0, length);
+			pixels.put(buffer, 0, length);
+		}
+		pixels.position(0);
+	}
+
+	/**
+	 * Stores thumbnail pixmap in cache. Pixmap is not disposed.
+	 * @throws IOException if entry couldn't be written, cache is left without entry for this thumbnail
+	 */
+	public void write (FileHandle file, FileChooser.ViewMode viewMode, int size, Pixmap pixmap) throws IOException {
+		FileHandle entry = getEntry(file, viewMode, size);
+		DataOutputStream out = null;
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile("thumb", ".tmp", directory.file());
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(file.path());
+			out.writeLong(file.length());
+			out.writeLong(file.lastModified());
+			out.writeInt(size);
+			out.writeInt(pixmap.getWidth());
+			out.writeInt(pixmap.getHeight());
+			out.writeUTF(pixmap.getFormat().name());
+
+			Pixmap.Format format = pixmap.getFormat();
+			if (jpegQuality > 0 && (format == Pixmap.Format.RGB888 || format == Pixmap.Format.RGB565)) {
+				out.writeByte(ENCODING_JPEG);
+				writeJpeg(out, pixmap);
+			} else {
+				out.writeByte(ENCODING_DEFLATE);
+				writeDeflated(out, pixmap);
+			}
+			out.close();
+			out = null;
+
+			long length = tmpFile.length();
+			delete(entry);
+			if (tmpFile.renameTo(entry.file()))
+				cacheSize.addAndGet(length);
+			else
+				tmpFile.delete();
+		} catch (IOException e) {
+			if (tmpFile != null) tmpFile.delete();
+			throw e;
+		} finally {
+			StreamUtils.closeQuietly(out);
+		}
+		if (cacheSize.get() > maxSize) prune();
+	}
+
+	private void writeJpeg (OutputStream out, Pixmap pixmap) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		if (writers.hasNext() == false) throw new IOException("No JPEG writer available");
+		ImageWriter writer = writers.next();
+		try {
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(jpegQuality);
+			ImageOutputStream imageOut = new MemoryCacheImageOutputStream(out);
+			writer.setOutput(imageOut);
+			writer.write(null, new IIOImage(PixmapConverter.toImage(pixmap), null, null), param);
+			imageOut.close(); // flushes image to out without closing it
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	private static void writeDeflated (OutputStream out, Pixmap pixmap) throws IOException {
+		DeflaterOutputStream pixelsOut = new DeflaterOutputStream(out);
+		ByteBuffer pixels = pixmap.getPixels();
+		pixels.position(0);
+		byte[] buffer = new byte[8192];
+		while (pixels.hasRemaining()) {
+			int length = Math.min(buffer.length, pixels.remaining());
+			pixels.get(buffer, 0, length);
+			pixelsOut.write(buffer, 0, length);
+		}
+		pixels.position(0);
+		pixelsOut.finish();
+	}
+
+	private void delete (FileHandle entry) {
+		long length = entry.length();
+		if (entry.delete()) cacheSize.addAndGet(-length);
+	}
+
+	/**
+	 * Recounts cache size and deletes least recently used entries if it exceeds max size. Size is recounted from
+	 * directory listing so it stays correct when other threads or processes modify cache.
+	 */
+	private synchronized void prune () {
+		File[] files = directory.file().listFiles();
+		if (files == null) return;
+		CacheFile[] entries = new CacheFile[files.length];
+		int count = 0;
+		long total = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(".tmp")) continue; // entry being written
+			CacheFile entry = new CacheFile(file);
+			entries[count++] = entry;
+			total += entry.length;
+		}
+
+		if (total > maxSize) {
+			Arrays.sort(entries, 0, count);
+			long target = (long) (maxSize * PRUNE_RATIO);
+			for (int i = 0; i < count && total > target; i++) {
+				if (entries[i].file.delete()) total -= entries[i].length;
+			}
+		}
+		cacheSize.set(total);
+	}
+
+	/** Deletes all cached thumbnails. */
+	public void clear () {
+		directory.emptyDirectory();
+		cacheSize.set(0);
+	}
+
+	/**
+	 * Sets maximum size of cache. When it is exceeded least recently used thumbnails are deleted until cache size drops
+	 * below 90% of max size. If new size is smaller than current cache size thumbnails are deleted immediately on calling
+	 * thread.
+	 * @param maxSize size in bytes, default is 64 MB
+	 */
+	public void setMaxSize (long maxSize) {
+		this.maxSize = maxSize;
+		if (cacheSize.get() > maxSize) prune();
+	}
+
+	public long getMaxSize () {
+		return maxSize;
+	}
+
+	/** @return current size of cached thumbnails in bytes */
+	public long getSize () {
+		return cacheSize.get();
+	}
+
+	/**
+	 * @param jpegQuality quality of JPEG compression used for thumbnails without alpha channel, from 0 to 1, default is
+	 * 0.9. Set to 0 to store all thumbnails losslessly. Affects only thumbnails written after this call.
+	 */
+	public void setJpegQuality (float jpegQuality) {
+		this.jpegQuality = jpegQuality;
+	}
+
+	public float getJpegQuality () {
+		return jpegQuality;
+	}
+
+	public FileHandle getDirectory () {
+		return directory;
+	}
+
+	private FileHandle getEntry (FileHandle file, FileChooser.ViewMode viewMode, int size) {
+		return directory.child(hash(file.path() + "|" + viewMode.name() + "|" + size));
+	}
+
+	/** Snapshot of entry file, modification time of file may change during sorting. */
+	private static class CacheFile implements Comparable<CacheFile> {
+		final File file;
+		final long lastModified;
+		final long length;
+
+		CacheFile (File file) {
+			this.file = file;
+			this.lastModified = file.lastModified();
+			this.length = file.length();
+		}
+
+		@Override
+		public int compareTo (CacheFile other) {
+			return lastModified < other.lastModified ? -1 : (lastModified == other.lastModified ? 0 : 1);
+		}
+	}
+
+	private static String hash (String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+				builder.append(Character.forDigit(b & 0xF, 16));
+			}
+			return builder.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new GdxRuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new GdxRuntimeException(e);
+		}
+	}
+}
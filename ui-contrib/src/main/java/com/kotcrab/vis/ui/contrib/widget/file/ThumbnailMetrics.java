@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot of thumbnail pipeline metrics of {@link CachingFileChooserIconProvider}, obtained using
+ * {@link CachingFileChooserIconProvider#getMetrics()}. Counters are accumulated since provider was created or metrics
+ * were reset, times are totals in nanoseconds.
+ * @author Kotcrab
+ * @see ThumbnailMetricsListener
+ */
+public class ThumbnailMetrics {
+	private final int queuedJobs;
+	private final int parkedJobs;
+	private final int runningJobs;
+	private final long memoryCacheHits;
+	private final long memoryCacheMisses;
+	private final long diskCacheHits;
+	private final long diskCacheMisses;
+	private final long headerProbes;
+	private final long headerProbeNanos;
+	private final long decodes;
+	private final long decodeNanos;
+	private final long scales;
+	private final long scaleNanos;
+	private final long uploads;
+	private final long uploadNanos;
+	private final long evictions;
+	private final long failures;
+
+	private ThumbnailMetrics (Recorder recorder, int queuedJobs, int parkedJobs, int runningJobs) {
+		this.queuedJobs = queuedJobs;
+		this.parkedJobs = parkedJobs;
+		this.runningJobs = runningJobs;
+		memoryCacheHits = recorder.memoryCacheHits.get();
+		memoryCacheMisses = recorder.memoryCacheMisses.get();
+		diskCacheHits = recorder.diskCacheHits.get();
+		diskCacheMisses = recorder.diskCacheMisses.get();
+		headerProbes = recorder.headerProbes.get();
+		headerProbeNanos = recorder.headerProbeNanos.get();
+		decodes = recorder.decodes.get();
+		decodeNanos = recorder.decodeNanos.get();
+		scales = recorder.scales.get();
+		scaleNanos = recorder.scaleNanos.get();
+		uploads = recorder.uploads.get();
+		uploadNanos = recorder.uploadNanos.get();
+		evictions = recorder.evictions.get();
+		failures = recorder.failures.get();
+	}
+
+	/** @return amount of jobs waiting in worker pool queue */
+	public int getQueuedJobs () {
+		return queuedJobs;
+	}
+
+	/** @return amount of jobs waiting until user scrolls close to their items, see {@link CachingFileChooserIconProvider#setLookAhead(float)} */
+	public int getParkedJobs () {
+		return parkedJobs;
+	}
+
+	/** @return approximate amount of jobs being executed by worker threads */
+	public int getRunningJobs () {
+		return runningJobs;
+	}
+
+	/** @return total amount of jobs that were not finished yet */
+	public int getQueueDepth () {
+		return queuedJobs + parkedJobs + runningJobs;
+	}
+
+	public long getMemoryCacheHits () {
+		return memoryCacheHits;
+	}
+
+	public long getMemoryCacheMisses () {
+		return memoryCacheMisses;
+	}
+
+	public long getDiskCacheHits () {
+		return diskCacheHits;
+	}
+
+	public long getDiskCacheMisses () {
+		return diskCacheMisses;
+	}
+
+	public long getHeaderProbes () {
+		return headerProbes;
+	}
+
+	public long getHeaderProbeNanos () {
+		return headerProbeNanos;
+	}
+
+	public long getDecodes () {
+		return decodes;
+	}
+
+	public long getDecodeNanos () {
+		return decodeNanos;
+	}
+
+	public long getScales () {
+		return scales;
+	}
+
+	public long getScaleNanos () {
+		return scaleNanos;
+	}
+
+	public long getUploads () {
+		return uploads;
+	}
+
+	public long getUploadNanos () {
+		return uploadNanos;
+	}
+
+	public long getEvictions () {
+		return evictions;
+	}
+
+	public long getFailures () {
+		return failures;
+	}
+
+	@Override
+	public String toString () {
+		return "ThumbnailMetrics{" +
+				"queueDepth=" + getQueueDepth() +
+				" (queued=" + queuedJobs + ", parked=" + parkedJobs + ", running=" + runningJobs + ")" +
+				", memoryCache=" + memoryCacheHits + "/" + (memoryCacheHits + memoryCacheMisses) +
+				", diskCache=" + diskCacheHits + "/" + (diskCacheHits + diskCacheMisses) +
+				", headerProbe=" + average(headerProbeNanos, headerProbes) +
+				", decode=" + average(decodeNanos, decodes) +
+				", scale=" + average(scaleNanos, scales) +
+				", upload=" + average(uploadNanos, uploads) +
+				", evictions=" + evictions +
+				", failures=" + failures +
+				'}';
+	}
+
+	private static String average (long nanos, long count) {
+		if (count == 0) return "0";
+		return count + "x" + TimeUnit.NANOSECONDS.toMicros(nanos / count) + "us";
+	}
+
+	/** Accumulates metrics, can be used from any thread. Updating counter costs single atomic add. */
+	static class Recorder {
+		private final AtomicLong memoryCacheHits = new AtomicLong();
+		private final AtomicLong memoryCacheMisses = new AtomicLong();
+		private final AtomicLong diskCacheHits = new AtomicLong();
+		private final AtomicLong diskCacheMisses = new AtomicLong();
+		private final AtomicLong headerProbes = new AtomicLong();
+		private final AtomicLong headerProbeNanos = new AtomicLong();
+		private final AtomicLong decodes = new AtomicLong();
+		private final AtomicLong decodeNanos = new AtomicLong();
+		private final AtomicLong scales = new AtomicLong();
+		private final AtomicLong scaleNanos = new AtomicLong();
+		private final AtomicLong uploads = new AtomicLong();
+		private final AtomicLong uploadNanos = new AtomicLong();
+		private final AtomicLong evictions = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+
+		public void memoryCacheLookup (boolean hit) {
+			(hit ? memoryCacheHits : memoryCacheMisses).incrementAndGet();
+		}
+
+		public void diskCacheLookup (boolean hit) {
+			(hit ? diskCacheHits : diskCacheMisses).incrementAndGet();
+		}
+
+		public void headerProbed (long nanos) {
+			headerProbes.incrementAndGet();
+			headerProbeNanos.addAndGet(nanos);
+		}
+
+		public void imageDecoded (long nanos) {
+			decodes.incrementAndGet();
+			decodeNanos.addAndGet(nanos);
+		}
+
+		public void imageScaled (long nanos) {
+			scales.incrementAndGet();
+			scaleNanos.addAndGet(nanos);
+		}
+
+		public void thumbnailUploaded (long nanos) {
+			uploads.incrementAndGet();
+			uploadNanos.addAndGet(nanos);
+		}
+
+		public void thumbnailEvicted () {
+			evictions.incrementAndGet();
+		}
+
+		public void thumbnailFailed () {
+			failures.incrementAndGet();
+		}
+
+		public ThumbnailMetrics snapshot (int queuedJobs, int parkedJobs, int runningJobs) {
+			return new ThumbnailMetrics(this, queuedJobs, parkedJobs, runningJobs);
+		}
+
+		public void reset () {
+			for (AtomicLong counter : new AtomicLong[]{memoryCacheHits, memoryCacheMisses, diskCacheHits, diskCacheMisses,
+					headerProbes, headerProbeNanos, decodes, decodeNanos, scales, scaleNanos, uploads, uploadNanos, evictions, failures}) {
+				counter.set(0);
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.kotcrab.vis.ui.widget.file.FileChooser;
+
+/**
+ * Empty implementation of {@link ThumbnailMetricsListener}.
+ * @author Kotcrab
+ */
+public class ThumbnailMetricsAdapter implements ThumbnailMetricsListener {
+	@Override
+	public void thumbnailRequested (FileHandle file, FileChooser.ViewMode viewMode, boolean cached) {
+
+	}
+
+	@Override
+	public void diskCacheLookup (FileHandle file, FileChooser.ViewMode viewMode, boolean hit) {
+
+	}
+
+	@Override
+	public void headerProbed (FileHandle file, long nanos) {
+
+	}
+
+	@Override
+	public void imageDecoded (FileHandle file, long nanos) {
+
+	}
+
+	@Override
+	public void imageScaled (FileHandle file, FileChooser.ViewMode viewMode, long nanos) {
+
+	}
+
+	@Override
+	public void thumbnailUploaded (FileHandle file, FileChooser.ViewMode viewMode, long nanos) {
+
+	}
+
+	@Override
+	public void thumbnailEvicted (FileHandle file, FileChooser.ViewMode viewMode) {
+
+	}
+
+	@Override
+	public void thumbnailFailed (FileHandle file, Exception e) {
+
+	}
+}
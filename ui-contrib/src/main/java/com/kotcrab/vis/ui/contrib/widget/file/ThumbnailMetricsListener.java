@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.widget.file;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.kotcrab.vis.ui.widget.file.FileChooser;
+
+/**
+ * Receives events of thumbnail pipeline of {@link CachingFileChooserIconProvider}, can be used to find out why thumbnails
+ * are slow. Methods marked as called from worker thread may be called concurrently and should return quickly.
+ * Aggregated values are also available from {@link CachingFileChooserIconProvider#getMetrics()}.
+ * @author Kotcrab
+ * @see ThumbnailMetricsAdapter
+ */
+public interface ThumbnailMetricsListener {
+	/**
+	 * Called from GL thread when thumbnail was requested by file chooser.
+	 * @param cached true if thumbnail was in memory cache, false if job generating it was scheduled
+	 */
+	void thumbnailRequested (FileHandle file, FileChooser.ViewMode viewMode, boolean cached);
+
+	/** Called from worker thread after thumbnail was looked up in {@link ThumbnailDiskCache}. */
+	void diskCacheLookup (FileHandle file, FileChooser.ViewMode viewMode, boolean hit);
+
+	/** Called from worker thread after image format and size were read from file header. */
+	void headerProbed (FileHandle file, long nanos);
+
+	/** Called from worker thread after image or its embedded thumbnail was decoded. */
+	void imageDecoded (FileHandle file, long nanos);
+
+	/** Called from worker thread after image was scaled and converted to thumbnail of given view mode. */
+	void imageScaled (FileHandle file, FileChooser.ViewMode viewMode, long nanos);
+
+	/** Called from GL thread after thumbnail was uploaded to {@link ThumbnailAtlas}. */
+	void thumbnailUploaded (FileHandle file, FileChooser.ViewMode viewMode, long nanos);
+
+	/** Called from GL thread when thumbnail was evicted from memory cache because memory budget was exceeded. */
+	void thumbnailEvicted (FileHandle file, FileChooser.ViewMode viewMode);
+
+	/**
+	 * Called from worker or GL thread when thumbnail couldn't be generated, uploaded or stored in {@link ThumbnailDiskCache}.
+	 * Includes errors of reading image header.
+	 */
+	void thumbnailFailed (FileHandle file, Exception e);
+}
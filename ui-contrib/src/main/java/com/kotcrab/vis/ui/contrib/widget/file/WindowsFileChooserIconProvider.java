@@ -1,9 +1,7 @@
 package com.kotcrab.vis.ui.contrib.widget.file;
 
-import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
-import com.badlogic.gdx.utils.Scaling;
+import com.badlogic.gdx.utils.TimeUtils;
 import com.kotcrab.vis.ui.widget.file.FileChooser;
 import com.kotcrab.vne.win.thumbnails.WinThumbnailProvider;
 
@@ -18,47 +16,40 @@ public class WindowsFileChooserIconProvider extends CachingFileChooserIconProvid
 	private WinThumbnailProvider provider;
 
 	public WindowsFileChooserIconProvider (FileChooser chooser) {
-		super(chooser);
+		super(chooser, 1); // native provider is not known to be thread safe, use single worker
 		provider = new WinThumbnailProvider();
 	}
 
 	@Override
 	protected void scheduleThumbnailGeneration (final Thumbnail thumbnail, final FileChooser.ViewMode viewMode, final float thumbSize, final FileChooser.FileItem item) {
-		executor.execute(new Runnable() {
+		execute(item, new Runnable() {
 			@Override
 			public void run () {
+				long start = TimeUtils.nanoTime();
 				final int[] data = provider.getThumbnail(item.getFile().path().replace("/", "\\"), (int) chooser.getViewMode().getGridSize(chooser.getSizes()));
+				recordDecode(item.getFile(), TimeUtils.timeSinceNanos(start));
 				if (data == null) return;
 				updateImageFromData(data, thumbnail, viewMode, item);
 			}
 		});
 	}
 
+	/** Pixmap is created on worker thread, it doesn't need GL context. */
 	private void updateImageFromData (final int[] data, final Thumbnail thumbnail, final FileChooser.ViewMode viewMode, final FileChooser.FileItem item) {
-		Gdx.app.postRunnable(new Runnable() {
-			@Override
-			public void run () {
-				Pixmap pixmap = new Pixmap(data[0], data[1], Pixmap.Format.RGBA8888);
-
-				int row = 0;
-				int column = 0;
-				for (int i = 2; i < data.length; i++) {
-					pixmap.drawPixel(row++, pixmap.getHeight() - column, data[i]);
+		Pixmap pixmap = new Pixmap(data[0], data[1], Pixmap.Format.RGBA8888);
 
-					if (row >= pixmap.getWidth()) {
-						row = 0;
-						column++;
-					}
-				}
+		int row = 0;
+		int column = 0;
+		for (int i = 2; i < data.length; i++) {
+			pixmap.drawPixel(row++, pixmap.getHeight() - column, data[i]);
 
-				Texture texture;
-				texture = new Texture(pixmap);
-				pixmap.dispose();
-
-				thumbnail.addThumb(viewMode, texture);
-				item.setIcon(thumbnail.getThumbnail(viewMode), Scaling.fit);
+			if (row >= pixmap.getWidth()) {
+				row = 0;
+				column++;
 			}
-		});
+		}
+
+		queueUpload(thumbnail, viewMode, item, pixmap);
 	}
 
 	public static boolean isPlatformSupported () {
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014-2016 See AUTHORS file.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.kotcrab.vis.ui.contrib.util.highlight;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.Array;
+import com.kotcrab.vis.ui.util.highlight.Highlight;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/** @author Kotcrab */
+public class RegexodusHighlightRuleTest {
+	private static final int WARMUP_PASSES = 20000;
+	private static final int MEASURED_PASSES = 1000;
+
+	@Test
+	public void pooledPassDoesNotAllocateAfterWarmup () {
+		RegexodusHighlightRule rule = new RegexodusHighlightRule(Color.RED, "\\b(int|float|return)\\b");
+		rule.setPooled(true);
+		assertEquals(0, measureAllocatedBytes(rule, createText("int"), createText("float")));
+	}
+
+	@Test
+	public void pooledIncrementalPassDoesNotAllocateAfterWarmup () {
+		RegexodusHighlightRule rule = new RegexodusHighlightRule(Color.RED, "\\b(int|float|return)\\b");
+		rule.setPooled(true);
+		rule.setIncremental(true);
+		assertEquals(0, measureAllocatedBytes(rule, createText("int"), createText("float")));
+	}
+
+	/** Processes texts alternately so every pass finds matches, returns bytes allocated by measured passes. */
+	private long measureAllocatedBytes (RegexodusHighlightRule rule, String text1, String text2) {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		Array<Highlight> highlights = new Array<Highlight>(1024);
+		for (int i = 0; i < WARMUP_PASSES; i++) {
+			process(rule, i % 2 == 0 ? text1 : text2, highlights);
+		}
+
+		long threadId = Thread.currentThread().getId();
+		long before = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < MEASURED_PASSES; i++) {
+			process(rule, i % 2 == 0 ? text1 : text2, highlights);
+		}
+		return threadBean.getThreadAllocatedBytes(threadId) - before;
+	}
+
+	private void process (RegexodusHighlightRule rule, String text, Array<Highlight> highlights) {
+		highlights.clear();
+		rule.process(text, highlights);
+	}
+
+	/** Creates text that differs from other texts created by this method only in middle line. */
+	private String createText (String keyword) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			if (i == 50)
+				builder.append(keyword).append(" edited = 0;\n");
+			else
+				builder.append("int value").append(i).append(" = compute(").append(i).append("); return value;\n");
+		}
+		return builder.toString();
+	}
+}